@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Synthetic game tree shared by all benchmark threads,
+ * generated once per trial in a temporary directory
+ *
+ * @author donizyo
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+
+    @Param("42")
+    public long seed;
+    @Param("64")
+    public int scripts;
+    // about 350 KB each
+    @Param("16")
+    public int languages;
+
+    private File tmp;
+    private File root;
+    private List<File> scriptFiles;
+    private List<File> langFiles;
+    private long scriptBytes;
+    private long langBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tmp = Files.createTempDirectory("stellaris-bench").toFile();
+        root = new CorpusGenerator(seed).generate(tmp, scripts, languages);
+        scriptFiles = new ArrayList<>();
+        langFiles = new ArrayList<>();
+        list(root);
+        scriptBytes = length(scriptFiles);
+        langBytes = length(langFiles);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CorpusGenerator.delete(tmp);
+    }
+
+    private void list(File dir) {
+        File[] files;
+        String name;
+
+        files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            name = file.getName();
+            if (file.isDirectory()) {
+                list(file);
+            } else if (name.endsWith(".txt")) {
+                scriptFiles.add(file);
+            } else if (name.endsWith(".yml")) {
+                langFiles.add(file);
+            }
+        }
+    }
+
+    private static long length(List<File> files) {
+        long res;
+
+        res = 0;
+        for (File file : files) {
+            res += file.length();
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @return the "Stellaris" directory
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    public List<File> getScriptFiles() {
+        return scriptFiles;
+    }
+
+    public List<File> getLangFiles() {
+        return langFiles;
+    }
+
+    public long getScriptBytes() {
+        return scriptBytes;
+    }
+
+    public long getLangBytes() {
+        return langBytes;
+    }
+}
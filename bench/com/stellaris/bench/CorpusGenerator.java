@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes a synthetic but realistic game tree for benchmarks:
+ * Clausewitz scripts under common/ and events/,
+ * and localisation YAML under localisation/.
+ * The same seed always produces the same corpus.
+ *
+ * @author donizyo
+ */
+public class CorpusGenerator {
+
+    private static final String[] DIRS = {
+        "common/technology",
+        "common/buildings",
+        "common/edicts",
+        "common/traits",
+        "common/static_modifiers",
+        "common/deposits",
+        "events"
+    };
+    private static final String[] OBJECTS = {
+        "tech", "building", "edict", "trait", "event", "mod"
+    };
+    private static final String[] KEYS = {
+        "potential", "trigger", "modifier", "allow", "effect", "weight",
+        "cost", "category", "prerequisites", "icon", "is_ai", "owner",
+        "planet", "country", "limit", "add_modifier", "set_flag",
+        "has_flag", "ai_weight", "factor", "base", "tier", "area", "level",
+        "upkeep", "resources", "energy", "minerals", "influence", "unity",
+        "duration", "days", "months", "years", "leader", "species", "pop",
+        "size", "class", "type", "name", "desc", "picture", "location",
+        "event_target", "hidden_effect", "random_list", "planet_class",
+        "district", "building", "job", "amount", "mult", "add", "value",
+        "scope", "is_triggered_only", "fire_only_once", "id", "option",
+        "title"
+    };
+    private static final String[] REFERENCES = {
+        "root", "from", "prev", "this", "owner", "capital_scope",
+        "solar_system", "tech_lasers_1", "ap_become_the_crisis", "pc_gaia",
+        "pc_continental", "building_capital", "job_researcher", "phys",
+        "soc", "eng", "planet_owner", "country_type", "default", "any",
+        "event_target:home"
+    };
+    private static final String[] WORDS = {
+        "The", "empire", "has", "discovered", "a", "new", "method", "of",
+        "harnessing", "energy", "from", "distant", "stars", "and", "our",
+        "scientists", "believe", "it", "could", "change", "everything",
+        "[Root.GetName]", "$RESOURCE$", "\\n", "§Y", "§!", "£energy£"
+    };
+
+    private final Random random;
+    private final StringBuilder sb;
+    private String newline;
+
+    public CorpusGenerator(long seed) {
+        random = new Random(seed);
+        sb = new StringBuilder();
+    }
+
+    /**
+     * Generate a game tree
+     *
+     * @param root directory to create "Stellaris" in
+     * @param scripts number of script files
+     * @param languages number of localisation files
+     * @return the "Stellaris" directory
+     * @throws IOException
+     */
+    public File generate(File root, int scripts, int languages)
+            throws IOException {
+        File dir, file;
+        String path;
+        int i;
+
+        dir = new File(root, "Stellaris");
+        for (i = 0; i < scripts; i++) {
+            path = DIRS[random.nextInt(DIRS.length)];
+            file = new File(dir, String.format("%s/%02d_bench.txt", path, i));
+            writeScript(file);
+        }
+        for (i = 0; i < languages; i++) {
+            file = new File(dir,
+                    String.format("localisation/%02d_bench_l_english.yml", i));
+            writeLocalisation(file, i, 2000 + random.nextInt(2000));
+        }
+        return dir;
+    }
+
+    private void writeScript(File file) throws IOException {
+        int i, count;
+
+        // both line endings are found in the vanilla game
+        newline = random.nextInt(2) == 0 ? "\r\n" : "\n";
+        count = 20 + random.nextInt(100);
+        for (i = 0; i < count; i++) {
+            sb.append(OBJECTS[random.nextInt(OBJECTS.length)])
+                    .append('_').append(random.nextInt(400))
+                    .append(" = {").append(newline);
+            block(1);
+            sb.append('}').append(newline);
+            if (random.nextInt(5) == 0) {
+                sb.append(newline);
+            }
+        }
+        write(file, random.nextInt(10) < 3);
+    }
+
+    private void block(int depth) {
+        int i, j, count, len;
+        int r;
+        String key;
+
+        count = 1 + random.nextInt(7);
+        for (i = 0; i < count; i++) {
+            key = KEYS[random.nextInt(KEYS.length)];
+            r = random.nextInt(100);
+            indent(depth);
+            if (r < 5) {
+                sb.append("# ").append(key).append(" comment { not a block }");
+            } else if (r < 9) {
+                sb.append(key).append(" = { min = ").append(random.nextInt(5))
+                        .append(" max = ").append(5 + random.nextInt(15))
+                        .append(" }");
+            } else if (r < 12) {
+                sb.append("color = rgb { ").append(random.nextInt(256))
+                        .append(' ').append(random.nextInt(256))
+                        .append(' ').append(random.nextInt(256))
+                        .append(" }");
+            } else if (r < 14) {
+                sb.append("color = hsv { 0.").append(random.nextInt(10))
+                        .append(" 0.5 0.8 }");
+            } else if (r < 17) {
+                sb.append(key).append(" = {");
+                len = 2 + random.nextInt(5);
+                for (j = 0; j < len; j++) {
+                    sb.append(' ')
+                            .append(REFERENCES[random.nextInt(REFERENCES.length)]);
+                }
+                sb.append(" }");
+            } else if (r < 19) {
+                sb.append(key).append(" = {");
+                len = 2 + random.nextInt(7);
+                for (j = 0; j < len; j++) {
+                    sb.append(' ').append(random.nextInt(300));
+                }
+                sb.append(" }");
+            } else if (r < 20) {
+                sb.append(key)
+                        .append(" = { rgb { 1 2 3 } hsv { 0.1 0.2 0.3 } }");
+            } else if (r < 22) {
+                sb.append(key).append(" > ").append(random.nextInt(10));
+            } else if (r < 50 && depth < 5) {
+                sb.append(key).append(" = {").append(newline);
+                block(depth + 1);
+                indent(depth);
+                sb.append('}');
+            } else if (r < 53) {
+                sb.append(key).append(" = ");
+                scalar();
+                sb.append("#trailing");
+            } else {
+                sb.append(key).append(" = ");
+                scalar();
+            }
+            sb.append(newline);
+        }
+    }
+
+    private void indent(int depth) {
+        int i;
+
+        for (i = 0; i < depth; i++) {
+            sb.append('\t');
+        }
+    }
+
+    private void scalar() {
+        int r;
+
+        r = random.nextInt(100);
+        if (r < 25) {
+            sb.append(random.nextInt(5000) - 50);
+        } else if (r < 40) {
+            sb.append(String.format(Locale.ROOT, "%.2f", random.nextFloat() * 55 - 5));
+        } else if (r < 55) {
+            sb.append(random.nextBoolean() ? "yes" : "no");
+        } else if (r < 65) {
+            sb.append('"')
+                    .append(REFERENCES[random.nextInt(REFERENCES.length)])
+                    .append('_').append(random.nextInt(100))
+                    .append('"');
+        } else {
+            sb.append(REFERENCES[random.nextInt(REFERENCES.length)]);
+        }
+    }
+
+    private void writeLocalisation(File file, int id, int entries)
+            throws IOException {
+        int i, j, len;
+
+        newline = "\r\n";
+        sb.append("l_english:").append(newline);
+        for (i = 0; i < entries; i++) {
+            if (random.nextInt(20) == 0) {
+                sb.append(" # ").append(WORDS[random.nextInt(WORDS.length)])
+                        .append(newline);
+            }
+            sb.append(' ')
+                    .append(OBJECTS[random.nextInt(OBJECTS.length)])
+                    .append('_').append(KEYS[random.nextInt(KEYS.length)])
+                    .append('_').append(id)
+                    .append('_').append(i)
+                    .append(random.nextInt(4) == 0 ? "_desc" : "")
+                    .append(':').append(random.nextInt(2))
+                    .append(" \"");
+            len = 1 + random.nextInt(random.nextInt(4) == 0 ? 60 : 8);
+            for (j = 0; j < len; j++) {
+                if (j > 0) {
+                    sb.append(' ');
+                }
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (random.nextInt(10) == 0) {
+                sb.append(" \\\"quoted\\\"");
+            }
+            sb.append('"').append(newline);
+        }
+        // localisation files always carry a BOM
+        write(file, true);
+    }
+
+    private void write(File file, boolean bom) throws IOException {
+        File dir;
+        byte[] data;
+
+        dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Fail to create directory: " + dir);
+        }
+        data = sb.toString().getBytes(StandardCharsets.UTF_8);
+        sb.setLength(0);
+        try (OutputStream out = new FileOutputStream(file)) {
+            if (bom) {
+                out.write(0xEF);
+                out.write(0xBB);
+                out.write(0xBF);
+            }
+            out.write(data);
+        }
+    }
+
+    /**
+     * Delete a generated tree
+     *
+     * @param file
+     */
+    public static void delete(File file) {
+        File[] files;
+
+        files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir;
+
+        if (args.length < 1) {
+            return;
+        }
+        dir = new CorpusGenerator(42).generate(new File(args[0]), 64, 4);
+        System.out.println(dir.getAbsolutePath());
+    }
+}
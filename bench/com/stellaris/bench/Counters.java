@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Input volume processed, reported by JMH as MB/s
+ * and localisation entries/s next to the primary score
+ *
+ * @author donizyo
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Counters {
+
+    public double megabytes;
+    public double entries;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        entries = 0;
+    }
+
+    public void addBytes(long bytes) {
+        megabytes += bytes / (1024.0 * 1024.0);
+    }
+
+    public void addEntries(long count) {
+        entries += count;
+    }
+}
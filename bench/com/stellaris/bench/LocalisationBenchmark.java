@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.bench;
+
+import com.stellaris.localisation.LangFileReader;
+import com.stellaris.localisation.LangFilterFactory;
+import com.stellaris.localisation.Language;
+import com.stellaris.localisation.LocalisationMap;
+import com.stellaris.test.Debug;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Localisation loading throughput over all YAML files of the corpus.
+ * validate=true runs the per-entry self-check loadInto used to do
+ * unconditionally, for comparison with the default fast path.
+ *
+ * @author donizyo
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalisationBenchmark {
+
+    @Param({"false", "true"})
+    public boolean validate;
+
+    @Setup
+    public void setup() {
+        Debug.VALIDATE_LOCALISATION = validate;
+    }
+
+    @Benchmark
+    public LocalisationMap load(Corpus corpus, Counters counters)
+            throws IOException {
+        Language language;
+        LocalisationMap map;
+        LangFileReader reader;
+        long entries;
+
+        language = LangFilterFactory.LANG_ENGLISH;
+        map = new LocalisationMap(language);
+        entries = 0;
+        for (File file : corpus.getLangFiles()) {
+            reader = new LangFileReader(language, file);
+            entries += reader.loadInto(map);
+        }
+        counters.addBytes(corpus.getLangBytes());
+        counters.addEntries(entries);
+        return map;
+    }
+}
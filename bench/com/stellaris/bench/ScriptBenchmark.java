@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.bench;
+
+import com.stellaris.ScriptLexer;
+import com.stellaris.ScriptParser;
+import com.stellaris.util.BOMReader;
+import com.stellaris.util.ScriptPath;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+import javax.script.ScriptContext;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lexer and parser throughput over all script files of the corpus;
+ * one operation is one pass over the whole corpus
+ *
+ * @author donizyo
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScriptBenchmark {
+
+    /**
+     * Reported by JMH as tokens/s
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public long lex(Corpus corpus, Counters counters, Tokens tokens)
+            throws IOException {
+        long count;
+
+        count = 0;
+        for (File file : corpus.getScriptFiles()) {
+            try (ScriptLexer lexer = new ScriptLexer(file)) {
+                while (lexer.hasNextToken()) {
+                    lexer.next();
+                    ++count;
+                }
+            }
+        }
+        tokens.tokens += count;
+        counters.addBytes(corpus.getScriptBytes());
+        return count;
+    }
+
+    /**
+     * Lex through a Reader instead of reading whole files at once
+     *
+     * @param corpus
+     * @param counters
+     * @param tokens
+     * @return
+     * @throws IOException
+     */
+    @Benchmark
+    public long lexReader(Corpus corpus, Counters counters, Tokens tokens)
+            throws IOException {
+        long count;
+
+        count = 0;
+        for (File file : corpus.getScriptFiles()) {
+            try (ScriptLexer lexer = new ScriptLexer(new BOMReader(file))) {
+                while (lexer.hasNextToken()) {
+                    lexer.next();
+                    ++count;
+                }
+            }
+        }
+        tokens.tokens += count;
+        counters.addBytes(corpus.getScriptBytes());
+        return count;
+    }
+
+    @Benchmark
+    public ScriptContext parse(Corpus corpus, Counters counters)
+            throws IOException {
+        ScriptContext context;
+
+        context = new SimpleScriptContext();
+        context.setBindings(new SimpleBindings(), ScriptContext.GLOBAL_SCOPE);
+        for (File file : corpus.getScriptFiles()) {
+            try (Reader reader = new BOMReader(file)) {
+                ScriptParser.newInstance(reader, ScriptPath.getPath(file),
+                        context);
+            }
+        }
+        counters.addBytes(corpus.getScriptBytes());
+        return context;
+    }
+}
@@ -16,9 +16,11 @@
  */
 package com.stellaris;
 
-import java.util.Objects;
+import com.stellaris.script.SymbolTable;
 
 /**
+ * A field path node. Paths are interned in the default symbol table,
+ * two fields are equal if and only if they have the same full path.
  *
  * @author donizyo
  */
@@ -27,13 +29,20 @@ public final class Field {
     public static final char SEPERATOR = '.';
     private final Field parent;
     private final String name;
+    private final int id;
 
     public Field(Field parent, String name) {
+        SymbolTable symbols;
+
         if (name == null) {
             throw new NullPointerException();
         }
+        symbols = SymbolTable.getDefault();
         this.parent = parent;
-        this.name = name;
+        this.id = symbols.path(
+                parent == null ? SymbolTable.ROOT : parent.id, name);
+        // share one instance of repeated names
+        this.name = symbols.getName(id);
     }
 
     public Field getParent() {
@@ -48,6 +57,23 @@ public final class Field {
         return name;
     }
 
+    /**
+     *
+     * @return path id in the default symbol table
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Full path from the root field, e.g. "tech_lasers_1.potential.always"
+     *
+     * @return
+     */
+    public String getPath() {
+        return SymbolTable.getDefault().getPath(id);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb;
@@ -65,42 +91,16 @@ public final class Field {
 
     @Override
     public int hashCode() {
-        int hash;
-        String pn;
-
-        hash = 5;
-        pn = getParentName();
-        hash = 89 * hash + Objects.hashCode(pn);
-        hash = 89 * hash + Objects.hashCode(name);
-        return hash;
+        return id;
     }
 
     @Override
     public boolean equals(Object obj) {
-        return this == obj
-                || obj != null
-                && obj instanceof Field
+        return obj instanceof Field
                 && equals((Field) obj);
     }
 
     public boolean equals(Field field) {
-        String mp;
-        String mn;
-        String fp;
-        String fn;
-
-        if (this == field) {
-            return true;
-        }
-        if (field == null) {
-            return false;
-        }
-
-        mp = getParentName();
-        fp = field.getParentName();
-        mn = getName();
-        fn = field.getName();
-
-        return mp == null ? mp == null : mp.equals(fp) && mn.equals(fn);
+        return field != null && id == field.id;
     }
 }
@@ -27,16 +27,29 @@ import javax.script.*;
  */
 public class FieldTypeBinding {
 
-    private final Map<String, ScriptValue> map;
+    private final Map<String, Set<Type>> types;
+    private final Map<String, Set<String>> children;
 
     public FieldTypeBinding(ScriptContext context) {
         Bindings bindings;
 
-        map = new TreeMap<>();
+        types = new TreeMap<>();
+        children = new HashMap<>();
         bindings = context.getBindings(ScriptContext.GLOBAL_SCOPE);
         loadFromMemory(bindings);
     }
 
+    /**
+     * List full field paths of a syntax table
+     *
+     * @param table
+     */
+    public FieldTypeBinding(SyntaxTable table) {
+        types = new TreeMap<>();
+        children = new HashMap<>();
+        loadFromTable(table);
+    }
+
     private void loadFromMemory(Bindings bindings) {
         Set<String> keySet;
         Object obj;
@@ -52,30 +65,64 @@ public class FieldTypeBinding {
                 continue;
             }
             value = (ScriptValue) obj;
-            map.put(key, value);
+            types.put(key, TypeSet.valueOf(value.getTypeMask()));
             if (value instanceof ScriptStruct) {
+                children.put(key, ((ScriptStruct) value).getChildren());
                 loadFromMemory((ScriptStruct) value);
+            } else {
+                children.remove(key);
+            }
+        }
+    }
+
+    private void loadFromTable(SyntaxTable table) {
+        SymbolTable symbols;
+        Set<Type> set;
+        Set<String> names;
+        String path, parent;
+        int mask;
+        int parentId;
+
+        symbols = SymbolTable.getDefault();
+        // by id, names may contain the separator themselves
+        for (int id : table.getPathIds()) {
+            mask = table.getTypeMask(id);
+            if (mask < 0) {
+                continue;
+            }
+            path = symbols.getPath(id);
+            set = TypeSet.valueOf(mask);
+            types.put(path, set);
+            if (set.contains(Type.STRUCT) && !children.containsKey(path)) {
+                children.put(path, new TreeSet<String>());
+            }
+            parentId = symbols.getParent(id);
+            if (parentId == SymbolTable.ROOT) {
+                continue;
+            }
+            parent = symbols.getPath(parentId);
+            names = children.get(parent);
+            if (names == null) {
+                names = new TreeSet<>();
+                children.put(parent, names);
             }
+            names.add(symbols.getName(id));
         }
     }
 
     public void list(PrintStream out) {
         Set<String> keySet;
-        ScriptValue value;
         Set<Type> set;
-        ScriptStruct struct;
-        Set<String> children;
+        Set<String> names;
 
-        keySet = map.keySet();
+        keySet = types.keySet();
         for (String key : keySet) {
-            value = map.get(key);
-            set = value.getTypeSet();
-            if (value instanceof ScriptStruct) {
-                struct = (ScriptStruct) value;
-                children = struct.getChildren();
+            set = types.get(key);
+            names = children.get(key);
+            if (names != null) {
                 out.format("%s=%s{%n",
                         key, set);
-                for (String child : children) {
+                for (String child : names) {
                     out.format("\t%s%n", child);
                 }
                 out.format("}%n");
@@ -16,173 +16,293 @@
  */
 package com.stellaris;
 
-import java.util.Iterator;
-import java.util.List;
+import java.io.IOException;
 
 /**
+ * Token patterns matched against the lexer's lookahead buffer,
+ * without consuming or materialising any token
  *
  * @author donizyo
  */
 public abstract class Patterns {
 
+    // returned by toInt if the characters are not an int
+    private static final long NOT_INT = Long.MIN_VALUE;
+
+    // { -> min = INTEGER max = INTEGER }
     public static final Patterns PS_RANGE = new Patterns() {
-        public boolean matches(List<Token> input, List<String> output) {
-            int size;
-            Iterator<Token> itr;
-            Token token;
-            String str;
-
-            size = input.size();
-            if (size != 7) {
-                return false;
+        @Override
+        public int match(ScriptLexer lexer)
+                throws IOException, TokenException {
+            if (lexer.peek(7) < 7) {
+                return 0;
             }
-            itr = input.iterator();
-
-            token = itr.next();
-            str = token.token;
-            if (!"min".equals(str)) {
-                return false;
+            if (lexer.peekEquals(0, "min")
+                    && lexer.peekEquals(1, "=")
+                    && lexer.peekIsInt(2)
+                    && lexer.peekEquals(3, "max")
+                    && lexer.peekEquals(4, "=")
+                    && lexer.peekIsInt(5)
+                    && lexer.peekEquals(6, "}")) {
+                return 7;
             }
+            return 0;
+        }
+    };
 
-            token = itr.next();
-            str = token.token;
-            if (!"=".equals(str)) {
-                return false;
+    // hsv -> { FLOAT FLOAT FLOAT }
+    // hsv -> { FLOAT FLOAT FLOAT FLOAT }
+    public static final Patterns PS_COLOR_HSV = new Patterns() {
+        @Override
+        public int match(ScriptLexer lexer)
+                throws IOException, TokenException {
+            return matchColor(lexer);
+        }
+    };
+
+    // rgb -> { INT INT INT }
+    // rgb -> { INT INT INT INT }
+    public static final Patterns PS_COLOR_RGB = new Patterns() {
+        @Override
+        public int match(ScriptLexer lexer)
+                throws IOException, TokenException {
+            return matchColor(lexer);
+        }
+    };
+
+    private Patterns() {
+    }
+
+    /**
+     * Match the tokens buffered ahead of the current token
+     *
+     * @param lexer
+     * @return number of tokens matched, 0 if the pattern doesn't match
+     * @throws IOException
+     * @throws TokenException
+     */
+    public abstract int match(ScriptLexer lexer)
+            throws IOException, TokenException;
+
+    /**
+     * Entries are left for the caller to parse
+     *
+     * @param lexer
+     * @return number of tokens including both braces
+     * @throws IOException
+     * @throws TokenException
+     */
+    private static int matchColor(ScriptLexer lexer)
+            throws IOException, TokenException {
+        int size;
+        int counter;
+        int i;
+
+        size = lexer.peek(6);
+        if (size != 6) {
+            throw new TokenException(Integer.toString(size));
+        }
+        if (!lexer.peekEquals(0, "{")) {
+            throw new TokenException(lexer.peekString(0));
+        }
+        counter = 0;
+        for (i = 1; i < size; i++) {
+            if (lexer.peekEquals(i, "}")) {
+                break;
             }
+            if (counter == 4) {
+                throw new TokenException("Too many entries");
+            }
+            ++counter;
+        }
+        if (counter < 3) {
+            throw new TokenException("Too few entries");
+        }
+        return counter + 2;
+    }
 
-            token = itr.next();
-            str = token.token;
-            try {
-                Integer.parseInt(str);
-            } catch (NumberFormatException ex) {
-                return false;
+    private static long toInt(CharSequence buf, int off, int len) {
+        long res;
+        int i, end;
+        char c;
+        boolean negative;
+
+        if (len <= 0) {
+            return NOT_INT;
+        }
+        i = off;
+        end = off + len;
+        c = buf.charAt(i);
+        negative = c == '-';
+        if (negative || c == '+') {
+            if (++i == end) {
+                return NOT_INT;
             }
-            if (output != null) {
-                output.add(str);
+        }
+        res = 0;
+        for (; i < end; i++) {
+            c = buf.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_INT;
             }
+            res = res * 10 + (c - '0');
+            if (res > 1L << 31) {
+                return NOT_INT;
+            }
+        }
+        if (negative) {
+            res = -res;
+        }
+        return res > Integer.MAX_VALUE ? NOT_INT : res;
+    }
+
+    /**
+     * Same as Integer.parseInt without throwing,
+     * only ASCII digits are accepted
+     *
+     * @param buf
+     * @param off
+     * @param len
+     * @return
+     */
+    public static boolean isInt(CharSequence buf, int off, int len) {
+        return toInt(buf, off, len) != NOT_INT;
+    }
 
-            token = itr.next();
-            str = token.token;
-            if (!"max".equals(str)) {
+    public static int parseInt(CharSequence buf, int off, int len)
+            throws NumberFormatException {
+        long res;
+
+        res = toInt(buf, off, len);
+        if (res == NOT_INT) {
+            throw new NumberFormatException("For input string: \""
+                    + buf.subSequence(off, off + len) + "\"");
+        }
+        return (int) res;
+    }
+
+    private static boolean regionEquals(CharSequence buf, int off, int end,
+            String str) {
+        int i, len;
+
+        len = str.length();
+        if (end - off != len) {
+            return false;
+        }
+        for (i = 0; i < len; i++) {
+            if (buf.charAt(off + i) != str.charAt(i)) {
                 return false;
             }
+        }
+        return true;
+    }
 
-            token = itr.next();
-            str = token.token;
-            if (!"=".equals(str)) {
+    /**
+     * Same as Float.parseFloat without throwing
+     *
+     * @param buf
+     * @param off
+     * @param len
+     * @return
+     */
+    public static boolean isFloat(CharSequence buf, int off, int len) {
+        int i, end, digits;
+        char c;
+
+        if (len <= 0) {
+            return false;
+        }
+        i = off;
+        end = off + len;
+        c = buf.charAt(i);
+        if (c == '-' || c == '+') {
+            if (++i == end) {
                 return false;
             }
-
-            token = itr.next();
-            str = token.token;
+            c = buf.charAt(i);
+        }
+        if (c == 'N') {
+            return regionEquals(buf, i, end, "NaN");
+        }
+        if (c == 'I') {
+            return regionEquals(buf, i, end, "Infinity");
+        }
+        if (c == '0' && i + 1 < end
+                && (buf.charAt(i + 1) == 'x' || buf.charAt(i + 1) == 'X')) {
+            // hexadecimal floats hardly ever show up
             try {
-                Integer.parseInt(str);
+                Float.parseFloat(buf.subSequence(off, end).toString());
+                return true;
             } catch (NumberFormatException ex) {
                 return false;
             }
-            if (output != null) {
-                output.add(str);
-            }
-
-            token = itr.next();
-            str = token.token;
-            return "}".equals(str);
         }
-    };
-
-    public static final Patterns PS_COLOR_HSV = new Patterns() {
-        public boolean matches(List<Token> input, List<String> output) {
-            int size;
-            Iterator<Token> itr;
-            Token token;
-            String str;
-            int counter;
-            float[] value;
-
-            size = input.size();
-            if (size != 6) {
-                throw new TokenException(Integer.toString(size));
+        // digits [. digits]
+        digits = 0;
+        while (i < end && (c = buf.charAt(i)) >= '0' && c <= '9') {
+            ++i;
+            ++digits;
+        }
+        if (i < end && buf.charAt(i) == '.') {
+            ++i;
+            while (i < end && (c = buf.charAt(i)) >= '0' && c <= '9') {
+                ++i;
+                ++digits;
             }
-            itr = input.iterator();
-            token = itr.next();
-            str = token.token;
-            if (!"{".equals(str)) {
-                throw new TokenException(str);
+        }
+        if (digits == 0) {
+            return false;
+        }
+        // [e [sign] digits]
+        if (i < end && ((c = buf.charAt(i)) == 'e' || c == 'E')) {
+            if (++i < end && ((c = buf.charAt(i)) == '-' || c == '+')) {
+                ++i;
             }
-            counter = 0;
-            value = new float[4];
-            while (itr.hasNext()) {
-                token = itr.next();
-                str = token.token;
-                if ("}".equals(str)) {
-                    break;
-                }
-                try {
-                    value[counter++] = Float.parseFloat(str);
-                    if (output != null) {
-                        output.add(str);
-                    }
-                } catch (ArrayIndexOutOfBoundsException ex) {
-                    throw new TokenException("Too many entries");
-                }
+            digits = 0;
+            while (i < end && (c = buf.charAt(i)) >= '0' && c <= '9') {
+                ++i;
+                ++digits;
             }
-            if (counter < 3) {
-                throw new TokenException("Too few entries");
+            if (digits == 0) {
+                return false;
             }
-            return true;
         }
-    };
-
-    public static final Patterns PS_COLOR_RGB = new Patterns() {
-        public boolean matches(List<Token> input, List<String> output) {
-            int size;
-            Iterator<Token> itr;
-            Token token;
-            String str;
-            int counter;
-            int[] value;
-
-            size = input.size();
-            if (size != 6) {
-                throw new TokenException(Integer.toString(size));
-            }
-            itr = input.iterator();
-            token = itr.next();
-            str = token.token;
-            if (!"{".equals(str)) {
-                throw new TokenException();
-            }
-            counter = 0;
-            value = new int[4];
-            while (itr.hasNext()) {
-                token = itr.next();
-                str = token.token;
-                if ("}".equals(str)) {
+        // [type suffix]
+        if (i < end) {
+            switch (buf.charAt(i)) {
+                case 'f':
+                case 'F':
+                case 'd':
+                case 'D':
+                    ++i;
                     break;
-                }
-                try {
-                    value[counter++] = Integer.parseInt(str);
-                    if (output != null) {
-                        output.add(str);
-                    }
-                } catch (ArrayIndexOutOfBoundsException ex) {
-                    throw new TokenException("Too many entries");
-                }
-            }
-            if (counter < 3) {
-                throw new TokenException("Too few entries");
+                default:
+                    return false;
             }
-            return true;
         }
-    };
-
-    private Patterns() {
+        return i == end;
     }
 
-    public boolean matches(List<Token> input) {
-        return matches(input, null);
+    /**
+     * Classify a word the way Integer.parseInt and Float.parseFloat
+     * would accept it, in a single pass without exceptions
+     *
+     * @param buf
+     * @param off
+     * @param len
+     * @return Token.INTEGER, Token.FLOAT or Token.WORD
+     */
+    public static int classify(CharSequence buf, int off, int len) {
+        if (isInt(buf, off, len)) {
+            return Token.INTEGER;
+        }
+        if (isFloat(buf, off, len)) {
+            return Token.FLOAT;
+        }
+        return Token.WORD;
     }
 
-    public abstract boolean matches(List<Token> input, List<String> output);
-
+    public static int classify(String str) {
+        return classify(str, 0, str.length());
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris;
+
+import com.stellaris.util.ScriptPath;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+import javax.script.ScriptContext;
+
+/**
+ * Scans a directory tree with work-stealing fork-join tasks.
+ * Every script file is parsed into an isolated context,
+ * so that results can be merged afterwards
+ * in the same order as Stellaris.scan does serially;
+ * type fragments go into the syntax table as soon as a file is parsed.
+ *
+ * @author donizyo
+ */
+class ScanTask extends RecursiveTask<List<ScanTask.Result>> {
+
+    private static final long serialVersionUID = 1L;
+    private final Stellaris main;
+    private final File dir;
+    private final Collection<File> subdirs;
+    private final int[] index;
+    private final Set<String> directories;
+    private final boolean forceUpdate;
+
+    /**
+     * Create the root task
+     *
+     * @param main
+     * @param dirs top-level directories
+     * @param directories receives directories containing script files
+     * @param forceUpdate
+     */
+    ScanTask(Stellaris main, Queue<File> dirs,
+            Set<String> directories, boolean forceUpdate) {
+        this(main, null, dirs, new int[0], directories, forceUpdate);
+    }
+
+    private ScanTask(Stellaris main, File dir, Collection<File> subdirs,
+            int[] index, Set<String> directories, boolean forceUpdate) {
+        this.main = main;
+        this.dir = dir;
+        this.subdirs = subdirs;
+        this.index = index;
+        this.directories = directories;
+        this.forceUpdate = forceUpdate;
+    }
+
+    private static int[] append(int[] index, int i) {
+        int len;
+        int[] res;
+
+        len = index.length;
+        res = new int[len + 1];
+        System.arraycopy(index, 0, res, 0, len);
+        res[len] = i;
+        return res;
+    }
+
+    @Override
+    protected List<Result> compute() {
+        ScriptFilter sf;
+        Collection<File> dirs;
+        Queue<File> files;
+        List<ScanTask> tasks;
+        List<Result> res;
+        int i;
+
+        if (dir == null) {
+            dirs = subdirs;
+            files = null;
+        } else {
+            sf = new ScriptFilter(null);
+            dir.listFiles(sf);
+            dirs = sf.getDirs();
+            files = sf.getFiles();
+        }
+        // fork sub-directories first,
+        // idle workers will steal them while we are parsing
+        tasks = new ArrayList<>(dirs.size());
+        i = 0;
+        for (File sub : dirs) {
+            tasks.add(new ScanTask(main, sub, null,
+                    append(index, i++), directories, forceUpdate));
+        }
+        for (ScanTask task : tasks) {
+            task.fork();
+        }
+        res = new ArrayList<>();
+        if (files != null && !files.isEmpty()) {
+            // filter empty directories
+            directories.add(ScriptPath.getPath(dir));
+            parse(files, res);
+        }
+        for (ScanTask task : tasks) {
+            res.addAll(task.join());
+        }
+        return res;
+    }
+
+    private void parse(Queue<File> files, List<Result> res) {
+        File file;
+        String filename;
+        String digest;
+        ScriptContext context;
+        int i;
+
+        i = 0;
+        while (!files.isEmpty()) {
+            file = files.remove();
+            ++i;
+            filename = ScriptPath.getPath(file);
+            if (Stellaris.isBlacklisted(filename)) {
+                continue;
+            }
+            digest = main.getDigestStore().update(file);
+            if (!forceUpdate && main.isUpToDate(filename, digest)) {
+                continue;
+            }
+            context = Stellaris.newFileContext();
+            main.refresh(file, filename, digest, context);
+            // bindings are kept even if the parser fails halfway,
+            // just like parsing in place
+            res.add(new Result(index, i, filename, context));
+        }
+    }
+
+    static final class Result implements Comparable<Result> {
+
+        private final int[] index;
+        private final int order;
+        private final String filename;
+        private final ScriptContext context;
+
+        private Result(int[] index, int order, String filename,
+                ScriptContext context) {
+            this.index = index;
+            this.order = order;
+            this.filename = filename;
+            this.context = context;
+        }
+
+        String getFilename() {
+            return filename;
+        }
+
+        ScriptContext getContext() {
+            return context;
+        }
+
+        /**
+         * Breadth-first order of the serial scan:
+         * directory depth, directory position, then file position
+         *
+         * @param o
+         * @return
+         */
+        @Override
+        public int compareTo(Result o) {
+            int[] a, b;
+            int i, len;
+
+            a = index;
+            b = o.index;
+            len = a.length;
+            if (len != b.length) {
+                return len < b.length ? -1 : 1;
+            }
+            for (i = 0; i < len; i++) {
+                if (a[i] != b[i]) {
+                    return a[i] < b[i] ? -1 : 1;
+                }
+            }
+            return Integer.compare(order, o.order);
+        }
+    }
+}
@@ -75,24 +75,29 @@ public class ScriptFilter implements FileFilter {
         return dirs;
     }
 
-    @Override
-    public boolean accept(File file) {
+    /**
+     *
+     * @param file
+     * @return true if the file name has one of the suffixes
+     */
+    public boolean matches(File file) {
         String name;
-        Set<String> s;
-        Queue<File> q;
 
-        s = ext;
-        q = files;
+        name = file.getName();
+        for (String suffix : ext) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean accept(File file) {
         if (file.isDirectory()) {
             dirs.add(file);
-        } else if (file.isFile()) {
-            name = file.getName();
-            for (String suffix : s) {
-                if (name.endsWith(suffix)) {
-                    q.add(file);
-                    break;
-                }
-            }
+        } else if (file.isFile() && matches(file)) {
+            files.add(file);
         }
         return false;
     }
@@ -22,7 +22,6 @@ import java.io.*;
 import java.nio.*;
 import java.util.*;
 import static com.stellaris.test.Debug.*;
-import com.stellaris.util.BOMReader;
 import com.stellaris.util.DigestStore;
 import com.stellaris.util.ScriptPath;
 import java.util.logging.Level;
@@ -36,14 +35,68 @@ public final class ScriptLexer extends AbstractLexer {
 
     private static final int BUFFER_SIZE = 65536;
     private static final int CACHE_SIZE = 3;
+    private static final int TOKEN_CAPACITY = 64;
+    private static final int TEXT_CAPACITY = 4096;
+
+    // ring buffer of tokens: (offset, length, line, kind)
+    private int[] offsets;
+    private int[] lengths;
+    private int[] lines;
+    private int[] kinds;
+    private int mask;
+    // first buffered token
+    private int head;
+    // number of buffered tokens
+    private int count;
+    // slot of the token returned by next(), -1 if none
+    private int current;
+    // token characters, referenced by offsets
+    private char[] text;
+    private int textLimit;
+    // token characters as a CharSequence, for scanning without copying
+    private final CharSequence textView = new CharSequence() {
+        @Override
+        public int length() {
+            return textLimit;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text[index];
+        }
 
-    private LinkedList<Token> queue;
-    private SortedMap<Integer, Queue<Token>> map;
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(text, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(text, 0, textLimit);
+        }
+    };
     private int cl, cr;
     //private final List<Integer> slbl = new LinkedList<>();
 
+    /**
+     * Lex a file read into memory and decoded at once
+     *
+     * @param file
+     * @throws IOException
+     */
     public ScriptLexer(File file) throws IOException {
-        this(new BOMReader(file));
+        super(file);
+        init();
+    }
+
+    /**
+     * Lex UTF-8 content held in memory
+     *
+     * @param bytes
+     */
+    public ScriptLexer(ByteBuffer bytes) {
+        super(bytes);
+        init();
     }
 
     public ScriptLexer(Reader in) throws IOException {
@@ -51,34 +104,42 @@ public final class ScriptLexer extends AbstractLexer {
                 ? (BufferedReader) in
                 : new BufferedReader(in),
                 BUFFER_SIZE);
-        queue = new LinkedList<>();
-        map = new TreeMap<>();
+        init();
+    }
+
+    private void init() {
+        offsets = new int[TOKEN_CAPACITY];
+        lengths = new int[TOKEN_CAPACITY];
+        lines = new int[TOKEN_CAPACITY];
+        kinds = new int[TOKEN_CAPACITY];
+        mask = TOKEN_CAPACITY - 1;
+        head = 0;
+        count = 0;
+        current = -1;
+        text = new char[TEXT_CAPACITY];
+        textLimit = 0;
         cl = 0;
         cr = 0;
     }
 
     public void skipCurrentLine() {
         int idx;
-        Queue<Token> q;
-        SortedMap<Integer, Queue<Token>> m;
-        Queue<Token> p;
 
         Debug.err.format("[INFO]\tSkip current line!%n");
 
-        m = map;
-        idx = m.firstKey();
-        q = queue;
-        // line - token mapping
-        m = map;
+        if (count == 0) {
+            throw new NoSuchElementException();
+        }
         // retrieve all tokens in this line
-        p = m.remove(idx);
-        if (p != null) {
-            q.removeAll(p);
+        idx = lines[head];
+        while (count > 0 && lines[head] == idx) {
+            head = (head + 1) & mask;
+            --count;
         }
     }
 
     private boolean hasRemaining() {
-        return !queue.isEmpty();
+        return count > 0;
     }
 
     public boolean hasNextToken() throws IOException, TokenException {
@@ -90,14 +151,10 @@ public final class ScriptLexer extends AbstractLexer {
 
     private boolean cache(int count)
             throws IOException, TokenException {
-        Queue<Token> q;
-        Map<Integer, Queue<Token>> m;
         boolean res;
 
-        q = queue;
-        m = map;
-        while (q.size() < count) {
-            res = tokenize(q, m);
+        while (this.count < count) {
+            res = tokenize();
             if (!res) {
                 break;
             }
@@ -106,19 +163,70 @@ public final class ScriptLexer extends AbstractLexer {
         return res;
     }
 
+    /**
+     * Buffer at most <code>count</code> tokens ahead
+     *
+     * @param count
+     * @return number of tokens available for peeking
+     * @throws IOException
+     * @throws TokenException
+     */
+    public int peek(int count)
+            throws IOException, TokenException {
+        cache(count);
+        return Math.min(count, this.count);
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return (head + index) & mask;
+    }
+
+    public int peekKind(int index) {
+        return kinds[slot(index)];
+    }
+
+    public boolean peekEquals(int index, String str) {
+        return regionEquals(slot(index), str);
+    }
+
+    public String peekString(int index) {
+        return toString(slot(index));
+    }
+
+    /**
+     *
+     * @param index
+     * @return true if the buffered token is an int
+     */
+    public boolean peekIsInt(int index) {
+        int idx;
+
+        idx = slot(index);
+        return kinds[idx] == Token.INTEGER;
+    }
+
+    public int peekInt(int index) throws NumberFormatException {
+        int idx;
+
+        idx = slot(index);
+        return Patterns.parseInt(textView, offsets[idx], lengths[idx]);
+    }
+
     public List<Token> peekToken(int count)
             throws IOException, TokenException {
         List<Token> res;
-        List<Token> q;
         int size;
+        int i, idx;
 
-        q = queue;
-        cache(count);
-        size = q.size();
-        if (size < count) {
-            count = size;
+        size = peek(count);
+        res = new ArrayList<>(size);
+        for (i = 0; i < size; i++) {
+            idx = slot(i);
+            res.add(new Token(toString(idx), lines[idx], kinds[idx]));
         }
-        res = q.subList(0, count);
         res = Collections.unmodifiableList(res);
         return res;
     }
@@ -131,40 +239,50 @@ public final class ScriptLexer extends AbstractLexer {
      */
     public void discardToken(int count) {
         int i;
-        Queue<Token> q;
-        Token token;
+        int idx;
 
         if (DEBUG && DEBUG_DISCARD) {
             Debug.err.format("[DSCD]\tcount=%d%n", count);
         }
         i = 0;
-        q = queue;
         while (i++ < count) {
-            token = q.remove();
-            cleanLine(token);
+            if (this.count == 0) {
+                throw new NoSuchElementException();
+            }
+            idx = head;
+            head = (head + 1) & mask;
+            --this.count;
             if (DEBUG && DEBUG_DISCARD) {
                 Debug.err.format("[DSCD]\tstr=\"%s\"%n\tcache=%d %s%n",
-                        token.token, q.size(), q.toString()
+                        toString(idx), this.count, queueString()
                 );
             }
         }
     }
-    
-    private void cleanLine(Token token) {
+
+    /**
+     * Advance to the next token without materialising it
+     *
+     * @return kind of the token
+     * @throws IOException
+     * @throws NoSuchElementException
+     */
+    public int next() throws IOException, NoSuchElementException {
         int idx;
-        SortedMap<Integer, Queue<Token>> m;
-        Queue<Token> l;
-        
-        if (token == null)
-            throw new NullPointerException("cleanLine");
-        idx = token.line;
-        // remove token in list
-        m = map;
-        l = m.get(idx);
-        l.remove(token);
-        // remove int-list binding from map
-        if (l.isEmpty())
-            m.remove(idx);
+
+        if (!hasNextToken()) {
+            throw new NoSuchElementException();
+        }
+        idx = head;
+        head = (head + 1) & mask;
+        --count;
+        current = idx;
+        if (DEBUG && DEBUG_NEXT) {
+            Debug.err.format("[NEXT]\tline=%d, next=\"%s\"%n\tcache=%d %s%n",
+                    lines[idx], toString(idx), count, queueString()
+            );
+        }
+        return kinds[idx];
     }
 
     /**
@@ -174,84 +292,215 @@ public final class ScriptLexer extends AbstractLexer {
      * @throws java.io.IOException
      */
     public Token nextToken() throws IOException, NoSuchElementException {
-        Queue<Token> q;
-        Token res;
-        int lineNumber;
+        int idx;
 
-        if (!hasNextToken()) {
-            throw new NoSuchElementException();
+        next();
+        idx = current;
+        return new Token(toString(idx), lines[idx], kinds[idx]);
+    }
+
+    private int checkCurrent() {
+        if (current < 0) {
+            throw new IllegalStateException("No current token");
         }
-        q = queue;
-        res = q.remove();
-        lineNumber = res.line;
-        cleanLine(res);
-        if (DEBUG && DEBUG_NEXT) {
-            Debug.err.format("[NEXT]\tline=%d, next=\"%s\"%n\tcache=%d %s%n",
-                    lineNumber, res.token, q.size(), q.toString()
-            );
+        return current;
+    }
+
+    public int getKind() {
+        return kinds[checkCurrent()];
+    }
+
+    public int getTokenLine() {
+        return lines[checkCurrent()];
+    }
+
+    /**
+     *
+     * @return shared character array, do not modify
+     */
+    public char[] getTokenArray() {
+        checkCurrent();
+        return text;
+    }
+
+    public int getTokenOffset() {
+        return offsets[checkCurrent()];
+    }
+
+    public int getTokenLength() {
+        return lengths[checkCurrent()];
+    }
+
+    /**
+     * Parse the current token without materialising it
+     *
+     * @return
+     * @throws NumberFormatException
+     */
+    public int getInt() throws NumberFormatException {
+        int idx;
+
+        idx = checkCurrent();
+        return Patterns.parseInt(textView, offsets[idx], lengths[idx]);
+    }
+
+    public boolean tokenEquals(String str) {
+        return regionEquals(checkCurrent(), str);
+    }
+
+    /**
+     * Materialise the current token
+     *
+     * @return
+     */
+    public String getToken() {
+        return toString(checkCurrent());
+    }
+
+    private String toString(int idx) {
+        return new String(text, offsets[idx], lengths[idx]);
+    }
+
+    private boolean regionEquals(int idx, String str) {
+        int len, off;
+        int i;
+        char[] buf;
+
+        len = lengths[idx];
+        if (len != str.length()) {
+            return false;
         }
-        return res;
+        off = offsets[idx];
+        buf = text;
+        for (i = 0; i < len; i++) {
+            if (buf[off + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String queueString() {
+        StringBuilder sb;
+        int i;
+
+        sb = new StringBuilder();
+        sb.append('[');
+        for (i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(toString((head + i) & mask));
+        }
+        sb.append(']');
+        return sb.toString();
     }
 
     /**
-     * Create a token string with char data from the buffer
+     * Make room for one more token of <code>len</code> characters
+     *
+     * @param len
+     */
+    private void ensureCapacity(int len) {
+        int start, used;
+        int cap, newcap;
+        int[] o, l, n, k;
+        int i, src, dst;
+        int from;
+        char[] buf;
+
+        // the current token stays valid until next() is called again
+        start = current < 0 ? head : current;
+        used = ((head - start) & mask) + count;
+        cap = mask + 1;
+        if (used + 1 > cap) {
+            newcap = cap << 1;
+            o = new int[newcap];
+            l = new int[newcap];
+            n = new int[newcap];
+            k = new int[newcap];
+            for (i = 0; i < used; i++) {
+                src = (start + i) & mask;
+                o[i] = offsets[src];
+                l[i] = lengths[src];
+                n[i] = lines[src];
+                k[i] = kinds[src];
+            }
+            offsets = o;
+            lengths = l;
+            lines = n;
+            kinds = k;
+            mask = newcap - 1;
+            if (current >= 0) {
+                current = 0;
+                head = used - count;
+            } else {
+                head = 0;
+            }
+            start = current < 0 ? head : current;
+        }
+        if (textLimit + len <= text.length) {
+            return;
+        }
+        // drop characters of consumed tokens
+        from = used == 0 ? textLimit : offsets[start];
+        if (from > 0) {
+            System.arraycopy(text, from, text, 0, textLimit - from);
+            textLimit -= from;
+            for (i = 0; i < used; i++) {
+                dst = (start + i) & mask;
+                offsets[dst] -= from;
+            }
+        }
+        if (textLimit + len > text.length) {
+            buf = new char[Math.max(text.length << 1, textLimit + len)];
+            System.arraycopy(text, 0, buf, 0, textLimit);
+            text = buf;
+        }
+    }
+
+    /**
+     * Append a token with char data from the buffer
      *
      * @param src
      * @param dst
-     * @return
      */
-    private String cache(int lineNumber, boolean isComment,
+    private void push(int lineNumber, int kind,
             char[] buf, int src, int dst)
             throws AssertionError {
         int len;
-        char c;
-        String str;
-        //int i;
-        Queue<Token> q;
+        int idx;
 
         if (src == dst) {
             throw new AssertionError("Empty string");
         }
         len = dst - src;
-        str = new String(buf, src, len);
-        if (!isComment && len == 1) {
-            c = buf[src];
-            if (c == '{') {
-                //slbl.add(lineNumber);
-                ++cl;
-            } else if (c == '}') {
-                ++cr;
-            }
-            /*
-            for (i = 0; i < len; i++) {
-                c = buf[src + i];
-                if (c == '{') {
-                    slbl.add(lineNumber);
-                    ++cl;
-                    i = -1;
-                    break;
-                } else if (c == '}') {
-                    ++cr;
-                    i = -1;
-                    break;
-                }
-            }
-            if (i == -1 && len != 1)
-                throw new AssertionError(
-                        String.format("[WARN] Unexpected token: \"%s\"%n", str)
-                );
-            */
+        if (kind == Token.LBRACE) {
+            //slbl.add(lineNumber);
+            ++cl;
+        } else if (kind == Token.RBRACE) {
+            ++cr;
+        }
+        ensureCapacity(len);
+        idx = (head + count) & mask;
+        System.arraycopy(buf, src, text, textLimit, len);
+        if (kind == Token.WORD) {
+            // numbers are told apart once, here
+            kind = Patterns.classify(textView, textLimit, len);
         }
-        q = queue;
+        offsets[idx] = textLimit;
+        lengths[idx] = len;
+        lines[idx] = lineNumber;
+        kinds[idx] = kind;
+        textLimit += len;
+        ++count;
         if (DEBUG && DEBUG_CACHE) {
             Debug.err.format("[CACHE]\tline=%d, src=%d, dst=%d, str=\"%s\"%n"
                     + "\tcache=%d %s%n",
-                    lineNumber, src, dst, str,
-                    q.size(), q.toString()
+                    lineNumber, src, dst, toString(idx),
+                    count, queueString()
             );
         }
-
-        return str;
     }
 
     private boolean isTerminalCharacter(char c) {
@@ -267,6 +516,23 @@ public final class ScriptLexer extends AbstractLexer {
         }
     }
 
+    private static int getKind(char c) {
+        switch (c) {
+            case '{':
+                return Token.LBRACE;
+            case '}':
+                return Token.RBRACE;
+            case '=':
+            case '>':
+            case '<':
+                return Token.OPERATOR;
+            case '"':
+                return Token.STRING;
+            default:
+                return Token.WORD;
+        }
+    }
+
     private void debugLine(CharBuffer buf) {
         if (Debug.DEBUG_LINE) {
             Debug.err.format("[LINE]\t%4d - %2d>\t%s%n",
@@ -299,20 +565,17 @@ public final class ScriptLexer extends AbstractLexer {
         return tmp.toString();
     }
 
-    private boolean tokenize(Queue<Token> q, Map<Integer, Queue<Token>> m)
+    private boolean tokenize()
             throws IOException, TokenException {
         char c;
-        int src, dst, pos;
-        String res;
-        Token token;
+        int src, dst, pos, limit;
         int lineNumber;
-        boolean isComment;
+        int kind;
         boolean isString;
         CharBuffer buf;
-        Queue<Token> p;
+        char[] hb;
         String line;
         StringBuilder sb;
-        String lex;
 
         // skip empty line:         "\r?\n"
         // skip white-space line:   "\s+\r?\n"
@@ -331,46 +594,55 @@ public final class ScriptLexer extends AbstractLexer {
         }
 
         lineNumber = getLineNumber();
-        p = new LinkedList<>();
-        line = compact(buf);
-        sb = new StringBuilder();
+        if (Debug.VALIDATE_LEXER) {
+            line = compact(buf);
+            sb = new StringBuilder();
+        } else {
+            line = null;
+            sb = null;
+        }
+        // scan the backing array directly, one pass per line
+        hb = buf.array();
+        pos = buf.position();
+        limit = buf.limit();
+        kind = Token.WORD;
         do {
-            isComment = false;
-            c = buf.get();
+            c = hb[pos++];
+            src = pos - 1;
             if (c == '#') {
-                isComment = true;
-                res = handleComment(buf);
+                kind = Token.COMMENT;
+                src = handleComment(hb, src, limit);
+                dst = limit;
+                pos = limit;
             } else {
                 // non-comment token
+                kind = getKind(c);
 
                 // handle leading terminal characters
-                pos = buf.position();
-                src = pos - 1;
                 if (isTerminalCharacter(c)) {
                     dst = pos;
                 } else {
                     isString = c == '"';
                     while (true) {
-                        if (!buf.hasRemaining()) {
+                        if (pos >= limit) {
                             if (isString) {
                                 throw new TokenException("String is not closed");
                             }
                             // NEWLINE or EOF
-                            dst = buf.position();
+                            dst = limit;
                             break;
                         }
-                        pos = buf.mark().position();
-                        c = buf.get();
+                        c = hb[pos];
                         if (isString) {
                             if (c == '\\') {
-                                buf.get();
-                                //continue;
+                                pos += 2;
+                                continue;
                             } else if (c == '"') {
-                                dst = pos + 1;
+                                dst = ++pos;
                                 break;
                             }
                         } else if (Character.isWhitespace(c)) {
-                            dst = pos;
+                            dst = pos++;
                             break;
                         } else if (isTerminalCharacter(c)
                                 || c == '#') {
@@ -378,25 +650,45 @@ public final class ScriptLexer extends AbstractLexer {
                             // handle immediate ending comment
                             // fuck those who don't have good coding habits
                             dst = pos;
-                            buf.reset();
                             break;
                         }
+                        ++pos;
                     }
                 }
-                res = cache(lineNumber, isComment, buf.array(), src, dst);
             }
 
-            sb.append(res);
-            if (!isComment || Debug.ACCEPT_COMMENT) {
-                token = new Token(res, lineNumber);
-                if (!q.add(token) || !p.add(token)) {
-                    throw new IllegalStateException("Fail to add new token");
-                }
+            if (sb != null) {
+                sb.append(hb, src, dst - src);
+            }
+            if (kind != Token.COMMENT || Debug.ACCEPT_COMMENT) {
+                push(lineNumber, kind, hb, src, dst);
             }
-        } while (skipLeadingWhitespace(buf));
+            // skip whitespace between tokens
+            while (pos < limit && Character.isWhitespace(hb[pos])) {
+                ++pos;
+            }
+        } while (pos < limit);
+        buf.position(limit);
+
+        if (sb != null && kind != Token.COMMENT) {
+            validate(lineNumber, line, sb.toString());
+        }
 
-        lex = sb.toString();
-        if (!lex.equals(line) && !isComment) {
+        return true;
+    }
+
+    /**
+     * Debug-only cross-check of the tokens against the compacted line,
+     * enabled by {@link Debug#VALIDATE_LEXER}
+     *
+     * @param lineNumber
+     * @param line whitespace-stripped source line
+     * @param lex concatenated tokens
+     * @throws AssertionError
+     */
+    private static void validate(int lineNumber, String line, String lex)
+            throws AssertionError {
+        if (!lex.equals(line)) {
             throw new AssertionError(
                     String.format(
                             "Lexical analysis exception @ %d:%n"
@@ -408,13 +700,6 @@ public final class ScriptLexer extends AbstractLexer {
                     )
             );
         }
-
-        // map the line with all tokens in this line
-        if (!p.isEmpty()) {
-            m.put(lineNumber, p);
-        }
-
-        return true;
     }
 
     /**
@@ -443,25 +728,20 @@ public final class ScriptLexer extends AbstractLexer {
         }
     }
 
-    private String handleComment(CharBuffer buf) {
-        int src;
-        char c;
-        String res;
-
-        // find a comment token
-        while (buf.hasRemaining()) {
-            c = buf.get();
-            if (c == '#') {
-                continue;
-            }
-            src = buf.position() - 2;
-            buf.position(src);
-            res = buf.toString();
-            buf.rewind().flip();
-            return res;
+    /**
+     * A comment runs to the end of the line,
+     * leading '#' characters collapse into the last one
+     *
+     * @param buf
+     * @param src index of the first '#'
+     * @param limit
+     * @return start index of the comment token
+     */
+    private static int handleComment(char[] buf, int src, int limit) {
+        while (src + 1 < limit && buf[src + 1] == '#') {
+            ++src;
         }
-        res = "#";
-        return res;
+        return src;
     }
 
     public void close() throws IOException {
@@ -547,9 +827,95 @@ public final class ScriptLexer extends AbstractLexer {
         return bList;
     }
 
+    private static void listScripts(File dir, List<File> files) {
+        File[] list;
+
+        list = dir.listFiles();
+        if (list == null) {
+            return;
+        }
+        Arrays.sort(list);
+        for (File file : list) {
+            if (file.isDirectory()) {
+                listScripts(file, files);
+            } else if (file.getName().endsWith(".txt")) {
+                files.add(file);
+            }
+        }
+    }
+
+    /**
+     * Lex every script file under the directory
+     *
+     * @param files
+     * @return number of tokens
+     * @throws IOException
+     */
+    private static long lex(List<File> files) throws IOException {
+        long count;
+
+        count = 0;
+        for (File file : files) {
+            try (ScriptLexer lexer = new ScriptLexer(file)) {
+                while (lexer.hasNextToken()) {
+                    lexer.next();
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compare lexer throughput with and without
+     * {@link Debug#VALIDATE_LEXER}
+     *
+     * @param dir e.g. "Stellaris/common"
+     */
+    private static void benchmark(File dir) {
+        List<File> files;
+        long bytes, count;
+        long start, elapsed;
+        boolean validate;
+        int round;
+
+        files = new ArrayList<>();
+        listScripts(dir, files);
+        bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+        validate = Debug.VALIDATE_LEXER;
+        try {
+            for (round = 0; round < 10; round++) {
+                Debug.VALIDATE_LEXER = (round & 1) != 0;
+                start = System.nanoTime();
+                count = lex(files);
+                elapsed = System.nanoTime() - start;
+                // the first rounds warm up the JIT
+                if (round < 6) {
+                    continue;
+                }
+                System.out.format("validate=%-5b %,12d tokens/s %8.2f MB/s%n",
+                        Debug.VALIDATE_LEXER,
+                        count * 1000000000L / elapsed,
+                        bytes * 1000.0 / elapsed
+                );
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(ScriptLexer.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            Debug.VALIDATE_LEXER = validate;
+        }
+    }
+
     public static void main(String[] args) {
         File file;
 
+        if (args.length == 1) {
+            benchmark(new File(args[0]));
+            return;
+        }
         if (args.length < 2) {
             return;
         }
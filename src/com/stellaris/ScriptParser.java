@@ -31,6 +31,7 @@ import com.stellaris.script.ScriptReference;
 import com.stellaris.script.ScriptString;
 import com.stellaris.script.ScriptStruct;
 import com.stellaris.script.ScriptValue;
+import com.stellaris.script.TypeFragment;
 import com.stellaris.test.Debug;
 import static com.stellaris.test.Debug.DEBUG;
 import static com.stellaris.test.Debug.SKIP_LINE;
@@ -42,12 +43,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.EmptyStackException;
-import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Stack;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.script.*;
@@ -63,12 +62,29 @@ public class ScriptParser extends ScriptValue {
     private boolean isCore;
     private ScriptContext context;
     private String filename;
+    private TypeFragment.Builder fragment;
+    // plain list elements, before they are packed
+    private final List<ScriptValue> listBuffer = new ArrayList<>();
 
     public static ScriptParser newInstance(File file, ScriptContext context) {
+        return newInstance(file, context, null);
+    }
+
+    /**
+     * Parse a file, recording its own type information into a fragment
+     * besides the bindings of the context
+     *
+     * @param file
+     * @param context
+     * @param fragment
+     * @return
+     */
+    public static ScriptParser newInstance(File file, ScriptContext context,
+            TypeFragment.Builder fragment) {
         try {
             if (file == null || !file.isFile())
                 throw new IllegalArgumentException("file");
-            return new ScriptParser(file, context);
+            return new ScriptParser(file, context, fragment);
         } catch (IOException ex) {
             throw new RuntimeException(ScriptPath.getPath(file), ex);
         }
@@ -76,7 +92,27 @@ public class ScriptParser extends ScriptValue {
 
     public static ScriptParser newInstance(Reader reader,
             String filename, ScriptContext context) throws IOException {
-        return new ScriptParser(reader, filename, context);
+        return newInstance(reader, filename, context, null);
+    }
+
+    public static ScriptParser newInstance(Reader reader,
+            String filename, ScriptContext context,
+            TypeFragment.Builder fragment) throws IOException {
+        return new ScriptParser(reader, filename, context, fragment);
+    }
+
+    /**
+     * Parse UTF-8 content held in memory, with or without byte order mark
+     *
+     * @param bytes
+     * @param filename
+     * @param context
+     * @return
+     */
+    public static ScriptParser newInstance(ByteBuffer bytes,
+            String filename, ScriptContext context) {
+        return new ScriptParser(new ScriptLexer(bytes), filename, false,
+                context, null);
     }
 
     private static boolean isCoreFile(File file) {
@@ -101,7 +137,8 @@ public class ScriptParser extends ScriptValue {
     }
 
     private ScriptParser(ScriptLexer parser, String filename,
-            boolean isCoreFile, ScriptContext context) {
+            boolean isCoreFile, ScriptContext context,
+            TypeFragment.Builder fragment) {
         if (parser == null)
             throw new NullPointerException();
         if (filename == null)
@@ -110,16 +147,20 @@ public class ScriptParser extends ScriptValue {
         this.filename = filename;
         this.isCore = isCoreFile;
         this.context = context;
+        this.fragment = fragment;
         analyze();
     }
 
-    private ScriptParser(File file, ScriptContext context) throws IOException {
-        this(new ScriptLexer(file), ScriptPath.getPath(file), isCoreFile(file), context);
+    private ScriptParser(File file, ScriptContext context,
+            TypeFragment.Builder fragment) throws IOException {
+        this(new ScriptLexer(file), ScriptPath.getPath(file),
+                isCoreFile(file), context, fragment);
     }
 
     private ScriptParser(Reader reader, String filename,
-            ScriptContext context) throws IOException {
-        this(new ScriptLexer(reader), filename, false, context);
+            ScriptContext context,
+            TypeFragment.Builder fragment) throws IOException {
+        this(new ScriptLexer(reader), filename, false, context, fragment);
     }
 
     private void analyze() throws TokenException {
@@ -146,6 +187,7 @@ public class ScriptParser extends ScriptValue {
                 throw new RuntimeException(ex);
             }
             scriptParser = null;
+            fragment = null;
         }
     }
 
@@ -187,20 +229,22 @@ public class ScriptParser extends ScriptValue {
             bindings = (ScriptStruct) get(parent);
         }
         if (value == null) {
-            value = new ScriptNull();
+            value = ScriptNull.NULL;
+        }
+        if (fragment != null) {
+            fragment.add(field, value);
         }
         obj = bindings.get(fieldName);
         if (obj != null && obj instanceof ScriptValue) {
             old = (ScriptValue) obj;
-            value.updateTypeInfo(old);
+            // shared values are copied rather than changed
+            value = value.updateTypeInfo(old);
         }
         bindings.put(fieldName, value);
     }
 
     public ScriptValue get(Field field) {
-        Stack<String> stack;
         Field parent;
-        String name;
         Bindings bindings;
         Object obj;
         ScriptValue value;
@@ -208,65 +252,43 @@ public class ScriptParser extends ScriptValue {
         if (field == null) {
             throw new NullPointerException();
         }
-        stack = new Stack<>();
-        parent = field;
-        while (parent != null) {
-            name = parent.getName();
-            parent = parent.getParent();
-            stack.push(name);
-        }
-        // root node
-        try {
-            name = stack.pop();
-        } catch (EmptyStackException ex) {
-            throw new AssertionError(ex);
-        }
-        bindings = getBindings(context);
-        if (bindings == null) {
-            throw new NullPointerException();
+        parent = field.getParent();
+        if (parent == null) {
+            // root node
+            bindings = getBindings(context);
+            if (bindings == null) {
+                throw new NullPointerException();
+            }
+            obj = bindings.get(field.getName());
+            if (obj == null) {
+                throw new NullPointerException();
+            }
+            if (!(obj instanceof ScriptValue)) {
+                throw new AssertionError(obj.getClass());
+            }
+            return (ScriptValue) obj;
         }
-        obj = bindings.get(name);
-        if (obj == null) {
-            throw new NullPointerException();
+        // walk up the parent chain instead of rebuilding the path
+        value = get(parent);
+        if (value == null) {
+            throw new AssertionError(new NullPointerException());
         }
-        if (!(obj instanceof ScriptValue)) {
-            throw new AssertionError(obj.getClass());
+        try {
+            bindings = (ScriptStruct) value;
+        } catch (ClassCastException ex) {
+            throw new AssertionError(value.getClass().toString(), ex);
         }
-        value = (ScriptValue) obj;
         // leaf node
-        while (!stack.isEmpty()) {
-            name = stack.pop();
-            try {
-                bindings = (ScriptStruct) value;
-
-                obj = bindings.get(name);
-                if (obj == null) {
-                    if (stack.isEmpty()) {
-                        return null;
-                    } else {
-                        throw new NullPointerException();
-                    }
-                }
-                value = (ScriptValue) obj;
-            } catch (NullPointerException ex) {
-                throw new AssertionError(ex);
-            } catch (ClassCastException ex) {
-                throw new AssertionError(value.getClass().toString(), ex);
-            }
-        }
-
-        return value;
+        return (ScriptValue) bindings.get(field.getName());
     }
 
     // remember to skip the current line when TokenException is thrown
     private int analyze(Field parent, int state, int index)
             throws IOException, TokenException, NoSuchElementException {
         ScriptLexer parser;
-        Token token;
+        int kind;
         String sToken, key;
-        List<Token> tokens;
-        List<String> output;
-        Iterator<String> itr;
+        int keyKind;
         Field field;
         //Type type;
         boolean isRange;
@@ -274,7 +296,7 @@ public class ScriptParser extends ScriptValue {
         Patterns patterns;
         int newstate;
         int min, max;
-        ScriptList<ScriptValue> scriptList;
+        ScriptList<?> scriptList;
         ScriptColor scriptColor;
 
         if (DEBUG) {
@@ -286,8 +308,7 @@ public class ScriptParser extends ScriptValue {
         parser = scriptParser;
         while (parser.hasNextToken()) {
             try {
-                token = parser.nextToken();
-                sToken = token.token;
+                kind = parser.next();
             } catch (TokenException ex) {
                 if (SKIP_LINE) {
                     skipCurrentLine(parser, ex);
@@ -296,20 +317,21 @@ public class ScriptParser extends ScriptValue {
                 throw ex;
             }
             // ignore comment token
-            if (sToken.charAt(0) == '#') {
+            if (kind == Token.COMMENT) {
                 continue;
             }
             // return
-            if ("}".equals(sToken)) {
+            if (kind == Token.RBRACE) {
                 //put(parent, cache); cache = null;
                 return --state;
             }
             try {
-                if (handleColorList(parent, token)) {
+                if (handleColorList(parent)) {
                     //type = Type.COLORLIST;
                     return --state;
                 } else {
-                    key = sToken;
+                    key = parser.getToken();
+                    keyKind = kind;
                 }
             } catch (TokenException | NumberFormatException ex) {
                 if (SKIP_LINE) {
@@ -322,8 +344,7 @@ public class ScriptParser extends ScriptValue {
             // operator
             // or list?
             try {
-                token = parser.nextToken();
-                sToken = token.token;
+                kind = parser.next();
             } catch (TokenException ex) {
                 if (SKIP_LINE) {
                     skipCurrentLine(parser, ex);
@@ -331,11 +352,9 @@ public class ScriptParser extends ScriptValue {
                 }
                 throw ex;
             }
-            isList = !"=".equals(sToken)
-                    && !">".equals(sToken)
-                    && !"<".equals(sToken);
+            isList = kind != Token.OPERATOR;
             // update for Stellaris v1.2
-            if (checkColorToken(sToken) != null) {
+            if (checkColorToken() != null) {
                 try {
                     throw new TokenException("Unexpected color token");
                 } catch (TokenException ex) {
@@ -349,11 +368,8 @@ public class ScriptParser extends ScriptValue {
 
             if (isList) {
                 // list entries: key, token, ...
-                scriptList = new ScriptList<>(
-                        ScriptValue.parseString(key)
-                );
                 try {
-                    isList = handlePlainList(scriptList, token);
+                    scriptList = handlePlainList(key, keyKind);
                 } catch (TokenException ex) {
                     if (SKIP_LINE) {
                         skipCurrentLine(parser, ex);
@@ -379,8 +395,7 @@ public class ScriptParser extends ScriptValue {
                 ++index;
                 // value
                 try {
-                    token = parser.nextToken();
-                    sToken = token.token;
+                    kind = parser.next();
                 } catch (TokenException ex) {
                     if (SKIP_LINE) {
                         skipCurrentLine(parser, ex);
@@ -388,7 +403,7 @@ public class ScriptParser extends ScriptValue {
                     }
                     throw ex;
                 }
-                patterns = checkColorToken(sToken);
+                patterns = checkColorToken();
                 if (patterns != null) {
                     try {
                         scriptColor = handleColorToken(patterns);
@@ -401,9 +416,11 @@ public class ScriptParser extends ScriptValue {
                     }
                     put(field, scriptColor);
                     scriptColor = null;
-                } else if ("{".equals(sToken)) {
+                } else if (kind == Token.LBRACE) {
+                    // { -> min = INTEGER max = INTEGER }
+                    patterns = Patterns.PS_RANGE;
                     try {
-                        tokens = parser.peekToken(7);
+                        isRange = patterns.match(parser) > 0;
                     } catch (TokenException ex) {
                         if (SKIP_LINE) {
                             skipCurrentLine(parser, ex);
@@ -411,17 +428,9 @@ public class ScriptParser extends ScriptValue {
                         }
                         throw ex;
                     }
-                    output = new ArrayList<>(2);
-                    // { -> min = INTEGER max = INTEGER }
-                    patterns = Patterns.PS_RANGE;
-                    isRange = patterns.matches(tokens, output);
                     if (isRange) {
-                        itr = output.iterator();
-
-                        sToken = itr.next();
-                        min = Integer.parseInt(sToken);
-                        sToken = itr.next();
-                        max = Integer.parseInt(sToken);
+                        min = parser.peekInt(2);
+                        max = parser.peekInt(5);
 
                         put(field, new ScriptRange(min, max));
                         parser.discardToken(7);
@@ -439,28 +448,24 @@ public class ScriptParser extends ScriptValue {
                         }
                         state = newstate;
                     }
-                } else if ("yes".equals(sToken)) {
+                } else if (parser.tokenEquals("yes")) {
                     put(field, ScriptBoolean.TRUE);
-                } else if ("no".equals(sToken)) {
+                } else if (parser.tokenEquals("no")) {
                     //type = Type.BOOLEAN;
                     put(field, ScriptBoolean.FALSE);
+                } else if (kind == Token.INTEGER) {
+                    //type = Type.INTEGER;
+                    put(field, ScriptInteger.valueOf(parser.getInt()));
+                } else if (kind == Token.FLOAT) {
+                    sToken = parser.getToken();
+                    put(field, ScriptFloat.valueOf(Float.parseFloat(sToken)));
                 } else {
-                    try {
-                        // integer
-                        put(field, new ScriptInteger(Integer.parseInt(sToken)));
-                        //type = Type.INTEGER;
-                    } catch (NumberFormatException e1) {
-                        // float
-                        try {
-                            put(field, new ScriptFloat(Float.parseFloat(sToken)));
-                        } catch (NumberFormatException e2) {
-                            if (sToken.startsWith("\"")
-                                    && sToken.endsWith("\"")) {
-                                put(field, new ScriptString(sToken));
-                            } else {
-                                put(field, new ScriptReference(sToken));
-                            }
-                        }
+                    sToken = parser.getToken();
+                    if (sToken.startsWith("\"")
+                            && sToken.endsWith("\"")) {
+                        put(field, ScriptString.valueOf(sToken));
+                    } else {
+                        put(field, ScriptReference.valueOf(sToken));
                     }
                 }
             }
@@ -492,16 +497,14 @@ public class ScriptParser extends ScriptValue {
         return bindings;
     }
 
-    private boolean handleColorList(Field parent, Token token) throws IOException {
+    private boolean handleColorList(Field parent) throws IOException {
         Patterns patterns;
         ScriptColor color;
         ScriptList<ScriptColor> colorList;
         ScriptLexer parser;
-        String sToken;
 
-        sToken = token.token;
         // detect color list
-        patterns = checkColorToken(sToken);
+        patterns = checkColorToken();
         if (patterns == null) {
             return false;
         }
@@ -513,18 +516,12 @@ public class ScriptParser extends ScriptValue {
             color = handleColorToken(patterns);
             colorList.add(color);
 
-            token = parser.nextToken();
-            sToken = token.token;
-            patterns = checkColorToken(sToken);
-            if (patterns != null) {
-                continue;
-            }
-            switch (sToken) {
-                case "}":
-                    // exit color list
-                    break;
-                default:
-                    throw new TokenException(sToken);
+            if (parser.next() != Token.RBRACE) {
+                patterns = checkColorToken();
+                if (patterns != null) {
+                    continue;
+                }
+                throw new TokenException(parser.getToken());
             }
             // exit color list
             break;
@@ -540,102 +537,101 @@ public class ScriptParser extends ScriptValue {
             throws IOException, TokenException {
         ScriptLexer parser;
         int len;
-        List<Token> tokens;
-        String[] data;
-        List<String> output;
         ScriptColor color;
-        String sa;
         int r, g, b, a0;
         float h, s, v, a1;
-        boolean isColor;
 
         if (patterns == null) {
             throw new NullPointerException();
         }
         parser = scriptParser;
-        len = 6;
-        tokens = parser.peekToken(len);
-        output = new ArrayList<>(len);
-        isColor = patterns.matches(tokens, output);
-        if (isColor) {
-            len = output.size();
-            parser.discardToken(len + 2);
-            data = new String[len];
-
-            output.toArray(data);
+        len = patterns.match(parser);
+        if (len == 0) {
+            throw new TokenException("Color token exception");
+        }
+        // entries are read in place, and dropped even if they are invalid
+        try {
             if (patterns == Patterns.PS_COLOR_RGB) {
-                r = Integer.parseInt(data[0]);
-                g = Integer.parseInt(data[1]);
-                b = Integer.parseInt(data[2]);
-                try {
-                    sa = data[3];
-                    a0 = Integer.parseInt(sa);
+                r = parser.peekInt(1);
+                g = parser.peekInt(2);
+                b = parser.peekInt(3);
+                if (len > 5) {
+                    a0 = parser.peekInt(4);
                     color = new ScriptRGBColor(r, g, b, a0);
-                } catch (ArrayIndexOutOfBoundsException | NullPointerException ex) {
+                } else {
                     color = new ScriptRGBColor(r, g, b);
                 }
             } else if (patterns == Patterns.PS_COLOR_HSV) {
-                h = Float.parseFloat(data[0]);
-                s = Float.parseFloat(data[1]);
-                v = Float.parseFloat(data[2]);
-                try {
-                    sa = data[3];
-                    a1 = Float.parseFloat(sa);
+                h = Float.parseFloat(parser.peekString(1));
+                s = Float.parseFloat(parser.peekString(2));
+                v = Float.parseFloat(parser.peekString(3));
+                if (len > 5) {
+                    a1 = Float.parseFloat(parser.peekString(4));
                     color = new ScriptHSVColor(h, s, v, a1);
-                } catch (ArrayIndexOutOfBoundsException | NullPointerException ex) {
+                } else {
                     color = new ScriptHSVColor(h, s, v);
                 }
             } else {
                 throw new AssertionError(patterns.getClass());
             }
-        } else {
-            throw new TokenException("Color token exception");
+        } finally {
+            parser.discardToken(len);
         }
         return color;
     }
 
-    private Patterns checkColorToken(String token) {
+    /**
+     * Check the current token
+     *
+     * @return
+     */
+    private Patterns checkColorToken() {
         Patterns patterns;
+        ScriptLexer parser;
 
-        switch (token) {
-            case "hsv":
-                patterns = Patterns.PS_COLOR_HSV;
-                break;
-            case "rgb":
-                patterns = Patterns.PS_COLOR_RGB;
-                break;
-            default:
-                patterns = null;
-                break;
+        parser = scriptParser;
+        if (parser.getKind() != Token.WORD) {
+            patterns = null;
+        } else if (parser.tokenEquals("hsv")) {
+            patterns = Patterns.PS_COLOR_HSV;
+        } else if (parser.tokenEquals("rgb")) {
+            patterns = Patterns.PS_COLOR_RGB;
+        } else {
+            patterns = null;
         }
         return patterns;
     }
 
-    private boolean handlePlainList(ScriptList list, Token token) throws IOException {
+    private ScriptList<?> handlePlainList(String first, int firstKind)
+            throws IOException {
         ScriptLexer parser;
-        String sToken;
-
-        sToken = token.token;
-        // handle single-element list
-        if ("}".equals(sToken)) {
-            return true;
-        }
+        List<ScriptValue> list;
+        int kind;
 
         parser = scriptParser;
-        list.add(ScriptValue.parseString(sToken));
-        // handle multiple-element list
-        while (true) {
-            token = parser.nextToken();
-            sToken = token.token;
-            if ("}".equals(sToken)) {
-                return true;
-            }
-            if ("{".equals(sToken)
-                    || "yes".equals(sToken)
-                    || "no".equals(sToken)) {
-                throw new TokenException(sToken);
+        list = listBuffer;
+        list.clear();
+        try {
+            list.add(ScriptValue.parseString(first, firstKind));
+            kind = parser.getKind();
+            // handle multiple-element list
+            while (kind != Token.RBRACE) {
+                if (kind == Token.INTEGER) {
+                    list.add(ScriptInteger.valueOf(parser.getInt()));
+                } else {
+                    list.add(ScriptValue.parseString(parser.getToken(), kind));
+                }
+                kind = parser.next();
+                if (kind == Token.LBRACE
+                        || parser.tokenEquals("yes")
+                        || parser.tokenEquals("no")) {
+                    throw new TokenException(parser.getToken());
+                }
             }
-            list.add(ScriptValue.parseString(sToken));
+            // numeric lists are packed into primitive arrays
+            return ScriptList.valueOf(list);
+        } finally {
+            list.clear();
         }
     }
 
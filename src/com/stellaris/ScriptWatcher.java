@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris;
+
+import com.stellaris.mod.ModLoader;
+import com.stellaris.test.Debug;
+import com.stellaris.util.TreeWatcher;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the syntax table and the mod bindings up to date
+ * while game or mod files are being edited.
+ * Only the files reported by the watcher are parsed again;
+ * each of them replaces its own previous contribution.
+ * <p>
+ * Mod descriptors are not watched,
+ * adding or removing a mod still requires loading the mods again.
+ *
+ * @author donizyo
+ */
+public class ScriptWatcher implements TreeWatcher.Listener, Closeable {
+
+    private final Stellaris main;
+    private final File dirRoot;
+    private final List<ModLoader> loaders;
+    private final TreeWatcher watcher;
+
+    /**
+     *
+     * @param main a scanned game directory
+     * @param pathHome user directory containing "mod/", or null for default
+     * @param loaders loaded mods
+     */
+    public ScriptWatcher(Stellaris main, String pathHome,
+            Collection<ModLoader> loaders) {
+        List<File> roots;
+        File dir;
+
+        if (pathHome == null) {
+            pathHome = ModLoader.getDefaultPathHome();
+        }
+        this.main = main;
+        this.dirRoot = main.getRootDirectory().getAbsoluteFile();
+        this.loaders = new ArrayList<>(loaders);
+        roots = new ArrayList<>();
+        addRoot(roots, dirRoot);
+        dir = new File(pathHome, "mod");
+        if (dir.isDirectory()) {
+            addRoot(roots, dir);
+        }
+        for (ModLoader loader : loaders) {
+            dir = loader.getLocation();
+            if (dir.isFile()) {
+                // archives are watched by their directory
+                dir = dir.getParentFile();
+            }
+            if (dir != null && dir.isDirectory()) {
+                addRoot(roots, dir);
+            }
+        }
+        watcher = new TreeWatcher(roots, this);
+    }
+
+    private static boolean contains(File root, File file) {
+        String prefix;
+
+        prefix = root.getPath() + File.separator;
+        return file.getPath().startsWith(prefix);
+    }
+
+    private static void addRoot(List<File> roots, File dir) {
+        dir = dir.getAbsoluteFile();
+        for (File root : roots) {
+            if (root.equals(dir) || contains(root, dir)) {
+                return;
+            }
+        }
+        for (int i = roots.size() - 1; i >= 0; i--) {
+            if (contains(dir, roots.get(i))) {
+                roots.remove(i);
+            }
+        }
+        roots.add(dir);
+    }
+
+    public void start() {
+        watcher.start();
+    }
+
+    public boolean isPolling() {
+        return watcher.isPolling();
+    }
+
+    @Override
+    public void close() {
+        watcher.close();
+    }
+
+    @Override
+    public void changed(Set<File> files) {
+        long time;
+
+        time = System.nanoTime();
+        for (File file : files) {
+            file = file.getAbsoluteFile();
+            try {
+                update(file);
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(ScriptWatcher.class.getName()).log(Level.SEVERE,
+                        file.getPath(), ex);
+            }
+        }
+        if (Debug.DEBUG && Debug.DEBUG_REFRESH) {
+            Debug.out.format("[WATCH] %d file(s) in %.1f ms%n",
+                    files.size(), (System.nanoTime() - time) / 1e6);
+        }
+    }
+
+    private void update(File file) throws IOException {
+        if (contains(dirRoot, file)) {
+            main.update(file);
+            return;
+        }
+        for (ModLoader loader : loaders) {
+            if (loader.reload(file)) {
+                return;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        Stellaris main;
+        Queue<ModLoader> loaders;
+        ScriptWatcher watcher;
+
+        if (args.length < 1) {
+            return;
+        }
+        Debug.DEBUG = true;
+        Debug.DEBUG_REFRESH = true;
+        main = new Stellaris();
+        Stellaris.setDefault(main);
+        main.init(args[0]);
+        main.scan(true, true);
+        loaders = new LinkedList<>();
+        if (args.length > 1) {
+            ModLoader.getModLoaders(args[1], loaders, loaders);
+        }
+        watcher = new ScriptWatcher(main, args.length < 2 ? null : args[1],
+                loaders);
+        watcher.start();
+        Debug.out.format("Watching \"%s\"%s, press Enter to stop%n",
+                args[0], watcher.isPolling() ? " (polling)" : "");
+        try {
+            System.in.read();
+        } catch (IOException ex) {
+            Logger.getLogger(ScriptWatcher.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        watcher.close();
+    }
+}
@@ -17,8 +17,12 @@
 package com.stellaris;
 
 import com.stellaris.mod.ModLoader;
+import com.stellaris.script.ScriptValue;
 import com.stellaris.script.SimpleEngine;
 import com.stellaris.script.SimpleFactory;
+import com.stellaris.script.SyntaxCache;
+import com.stellaris.script.SyntaxTable;
+import com.stellaris.script.TypeFragment;
 import com.stellaris.test.Debug;
 import com.stellaris.util.DigestStore;
 import com.stellaris.util.RootFilter;
@@ -27,11 +31,18 @@ import java.io.*;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.script.*;
@@ -54,15 +65,32 @@ public class Stellaris extends SimpleFactory {
         "common/component_tags/00_tags.txt"
     };
 
+    private static final String PATH_CACHE = "stellaris.stc";
+    private static final int[] SCOPES = {
+        ScriptContext.GLOBAL_SCOPE,
+        ScriptContext.ENGINE_SCOPE
+    };
     private static Stellaris stellaris;
     private final DigestStore digestStore;
     private final ScriptEngine scriptEngine;
+    private final SyntaxTable syntaxTable;
     private File dirRoot;
     private Set<String> directories;
+    // per scope, top-level keys bound by each file,
+    // and the file owning each key
+    private final Map<Integer, Map<String, Set<String>>> fileKeys;
+    private final Map<Integer, Map<String, String>> keyOwners;
 
     public Stellaris() {
         digestStore = new DigestStore();
         scriptEngine = super.getScriptEngine();
+        syntaxTable = new SyntaxTable();
+        fileKeys = new HashMap<>();
+        keyOwners = new HashMap<>();
+        for (int scope : SCOPES) {
+            fileKeys.put(scope, new HashMap<String, Set<String>>());
+            keyOwners.put(scope, new HashMap<String, String>());
+        }
     }
 
     public File getRootDirectory() {
@@ -90,13 +118,58 @@ public class Stellaris extends SimpleFactory {
     }
 
     public void scan(boolean forceUpdate) {
+        scan(forceUpdate, false);
+    }
+
+    /**
+     * Scan script files under the root directory
+     *
+     * @param forceUpdate re-parse files whose digests are not changed
+     * @param parallel parse files concurrently with fork-join tasks
+     */
+    public void scan(boolean forceUpdate, boolean parallel) {
+        if (parallel) {
+            scanParallel(forceUpdate);
+        } else {
+            scanSerial(forceUpdate);
+        }
+        prune();
+    }
+
+    /**
+     * Withdraw files which have been deleted
+     */
+    private void prune() {
+        List<String> filenames;
+
+        filenames = new ArrayList<>(syntaxTable.getFilenames());
+        for (String filename : filenames) {
+            if (!new File(dirRoot, filename).isFile()) {
+                withdraw(filename);
+            }
+        }
+    }
+
+    /**
+     * Withdraw the fragment, the bindings and the digest of a deleted file
+     *
+     * @param filename
+     */
+    private void withdraw(String filename) {
+        syntaxTable.remove(filename);
+        replace(filename, null);
+        digestStore.remove(filename);
+    }
+
+    private void scanSerial(boolean forceUpdate) {
         DirectoryFilter df;
         ScriptFilter sf;
         Queue<File> files, dirs;
         File file, dir;
-        ScriptParser script;
         String filename;
+        String digest;
         Set<String> set;
+        ScriptContext context;
 
         df = new DirectoryFilter();
         dirRoot.listFiles(df);
@@ -115,52 +188,263 @@ public class Stellaris extends SimpleFactory {
             // filter empty directories
             filename = ScriptPath.getPath(dir);
             set.add(filename);
-            mainloop:
             do {
                 file = files.remove();
                 filename = ScriptPath.getPath(file);
-                for (String name : BLACKLIST_ALL) {
-                    if (name.equals(filename)) {
-                        continue mainloop;
-                    }
-                }
-                for (String name : BLACKLIST_SYN) {
-                    if (name.equals(filename)) {
-                        continue mainloop;
-                    }
-                }
-                if (!forceUpdate && digestStore.matches(file)) {
+                if (isBlacklisted(filename)) {
                     continue;
                 }
-                // refresh syntax table
-                if (Debug.DEBUG && Debug.DEBUG_REFRESH) {
-                    Debug.out.format("[REFRESH] %s%n", ScriptPath.getPath(file));
-                }
-                try {
-                    script = ScriptParser.newInstance(file, scriptEngine.getContext());
-                } catch (IllegalStateException | AssertionError | BufferUnderflowException | BufferOverflowException ex) {
-                    Debug.err.format("[ERROR] Found at file \"%s\"%n", filename);
-                } catch (TokenException ex) {
-                    Debug.err.format("[ERROR] Found at file \"%s\"%n\t%s%n",
-                            filename, ex);
-                } catch (NoSuchElementException ex) {
-                    throw new RuntimeException(
-                            String.format(
-                                    "A non-blacklisted file \"%s\" has serious error!",
-                                    filename),
-                            ex
-                    );
+                digest = digestStore.update(file);
+                if (!forceUpdate && isUpToDate(filename, digest)) {
+                    continue;
                 }
+                context = newFileContext();
+                refresh(file, filename, digest, context);
+                replace(filename, context);
             } while (!files.isEmpty());
         }
 
         directories = new TreeSet<>(set);
     }
 
+    private void scanParallel(boolean forceUpdate) {
+        DirectoryFilter df;
+        ScanTask task;
+        List<ScanTask.Result> results;
+        Set<String> set;
+
+        df = new DirectoryFilter();
+        dirRoot.listFiles(df);
+        set = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        task = new ScanTask(this, df.getDirs(), set, forceUpdate);
+        results = ForkJoinPool.commonPool().invoke(task);
+        // merge in the same order as the serial scan does
+        Collections.sort(results);
+        for (ScanTask.Result result : results) {
+            replace(result.getFilename(), result.getContext());
+        }
+
+        directories = new TreeSet<>(set);
+    }
+
+    /**
+     * Re-parse a single created, modified or deleted file,
+     * replacing its previous contribution
+     *
+     * @param file
+     */
+    public void update(File file) {
+        String filename;
+        String digest;
+        ScriptContext context;
+
+        filename = ScriptPath.getPath(file);
+        if (filename == null || isBlacklisted(filename)) {
+            return;
+        }
+        if (!file.exists()) {
+            // a deleted directory takes its files along
+            for (String name : new ArrayList<>(syntaxTable.getFilenames())) {
+                if (name.equals(filename)
+                        || name.startsWith(filename + '/')) {
+                    withdraw(name);
+                }
+            }
+            return;
+        }
+        if (filename.indexOf('/') < 0) {
+            // scan only walks the sub-directories of the game root
+            return;
+        }
+        if (!file.isFile() || !new ScriptFilter(null).matches(file)) {
+            return;
+        }
+        digest = digestStore.update(file);
+        if (isUpToDate(filename, digest)) {
+            return;
+        }
+        context = newFileContext();
+        refresh(file, filename, digest, context);
+        replace(filename, context);
+    }
+
+    static boolean isBlacklisted(String filename) {
+        for (String name : BLACKLIST_ALL) {
+            if (name.equals(filename)) {
+                return true;
+            }
+        }
+        for (String name : BLACKLIST_SYN) {
+            if (name.equals(filename)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    DigestStore getDigestStore() {
+        return digestStore;
+    }
+
+    /**
+     * Check whether the syntax table already holds
+     * the type information of this very file content
+     *
+     * @param filename
+     * @param digest
+     * @return
+     */
+    boolean isUpToDate(String filename, String digest) {
+        TypeFragment fragment;
+
+        fragment = syntaxTable.getFragment(filename);
+        return fragment != null && digest.equals(fragment.getDigest());
+    }
+
+    /**
+     * Create an isolated context for a single script file
+     *
+     * @return
+     */
+    static ScriptContext newFileContext() {
+        ScriptContext context;
+
+        context = new SimpleScriptContext();
+        context.setBindings(new SimpleBindings(), ScriptContext.GLOBAL_SCOPE);
+        return context;
+    }
+
+    /**
+     * Refresh syntax table with the given file
+     *
+     * @param file
+     * @param filename
+     * @param digest digest of the file content
+     * @param context
+     */
+    void refresh(File file, String filename, String digest,
+            ScriptContext context) {
+        TypeFragment.Builder fragment;
+
+        if (Debug.DEBUG && Debug.DEBUG_REFRESH) {
+            Debug.out.format("[REFRESH] %s%n", filename);
+        }
+        fragment = new TypeFragment.Builder(filename);
+        fragment.setDigest(digest);
+        try {
+            ScriptParser.newInstance(file, context, fragment);
+        } catch (IllegalStateException | AssertionError | BufferUnderflowException | BufferOverflowException ex) {
+            Debug.err.format("[ERROR] Found at file \"%s\"%n", filename);
+        } catch (TokenException ex) {
+            Debug.err.format("[ERROR] Found at file \"%s\"%n\t%s%n",
+                    filename, ex);
+        } catch (NoSuchElementException ex) {
+            throw new RuntimeException(
+                    String.format(
+                            "A non-blacklisted file \"%s\" has serious error!",
+                            filename),
+                    ex
+            );
+        }
+        // replace the previous contribution of this file
+        syntaxTable.merge(fragment.build());
+    }
+
+    /**
+     * Replace the top-level bindings of a file in the engine context
+     * in one step
+     *
+     * @param filename
+     * @param src file context, or null to withdraw the file
+     */
+    private void replace(String filename, ScriptContext src) {
+        ScriptContext engineContext;
+
+        engineContext = scriptEngine.getContext();
+        synchronized (engineContext) {
+            for (int scope : SCOPES) {
+                replace(filename,
+                        src == null ? null : src.getBindings(scope),
+                        engineContext.getBindings(scope),
+                        scope);
+            }
+        }
+    }
+
+    /**
+     * Unbind the keys a file no longer binds, unless another file
+     * has bound them since, then merge the new bindings,
+     * which is what ScriptParser.put does when parsing in place
+     *
+     * @param filename
+     * @param from bindings of the file, may be null
+     * @param to
+     * @param scope
+     */
+    private void replace(String filename, Bindings from, Bindings to,
+            int scope) {
+        Map<String, Set<String>> keys;
+        Map<String, String> owners;
+        Set<String> old;
+        String key;
+        Object value, prev;
+
+        keys = fileKeys.get(scope);
+        owners = keyOwners.get(scope);
+        old = keys.remove(filename);
+        if (old != null) {
+            for (String k : old) {
+                if ((from == null || !from.containsKey(k))
+                        && filename.equals(owners.get(k))) {
+                    owners.remove(k);
+                    to.remove(k);
+                }
+            }
+        }
+        if (from == null || from.isEmpty()) {
+            return;
+        }
+        if (to == null) {
+            throw new NullPointerException();
+        }
+        keys.put(filename, new HashSet<>(from.keySet()));
+        for (Map.Entry<String, Object> entry : from.entrySet()) {
+            key = entry.getKey();
+            value = entry.getValue();
+            prev = to.get(key);
+            if (value instanceof ScriptValue && prev instanceof ScriptValue) {
+                value = ((ScriptValue) value).updateTypeInfo((ScriptValue) prev);
+            }
+            to.put(key, value);
+            owners.put(key, filename);
+        }
+    }
+
     public Set<String> getDirectories() {
         return directories;
     }
 
+    /**
+     * Copy of the global bindings, taken under the lock
+     * the watcher holds while it replaces the bindings of a file
+     *
+     * @return
+     */
+    public Map<String, Object> copyBindings() {
+        synchronized (scriptEngine.getContext()) {
+            return new HashMap<>(getBindings());
+        }
+    }
+
+    /**
+     * Field path - type set table of all scanned files
+     *
+     * @return
+     */
+    public SyntaxTable getSyntaxTable() {
+        return syntaxTable;
+    }
+
     private static void printCopyrightMessage() {
         Debug.out.format("\tStellarisIDE is an open-source software licensed under GPLv3.%n"
                 + "\tIt is aimed to help people create non-commercial mods%n"
@@ -187,8 +471,9 @@ public class Stellaris extends SimpleFactory {
         File path;
         Stellaris st;
         VersionScanner scanner;
-        ScriptEngine se;
-        ScriptContext sc;
+        String version;
+        SyntaxCache cache;
+        boolean isCached;
         FieldTypeBinding ftb;
         Set<String> dirs;
 
@@ -199,14 +484,18 @@ public class Stellaris extends SimpleFactory {
             path = RootFilter.getGameDirectory();
             st.init(path);
             scanner = new VersionScanner(path);
+            version = scanner.getGameVersion();
             Debug.out.format("Game Version: v%s%n"
                     + "Checkout directory \"%s\"...%n",
-                    scanner.getGameVersion(),
+                    version,
                     path);
-            st.scan(true);
-            se = st.scriptEngine;
-            sc = se.getContext();
-            ftb = new FieldTypeBinding(sc);
+            // only parse files modified since the cache was written
+            cache = new SyntaxCache(
+                    new File(DigestStore.getUserDir(), PATH_CACHE));
+            isCached = cache.load(version, st.syntaxTable);
+            st.scan(!isCached, true);
+            cache.store(version, st.syntaxTable);
+            ftb = new FieldTypeBinding(st.syntaxTable);
             try (FileOutputStream fout = new FileOutputStream("ftb.log");
                     PrintStream out = new PrintStream(fout);) {
                 ftb.list(out);
@@ -22,12 +22,28 @@ package com.stellaris;
  */
 public final class Token {
 
+    public static final int WORD = 0;
+    public static final int STRING = 1;
+    public static final int LBRACE = 2;
+    public static final int RBRACE = 3;
+    public static final int OPERATOR = 4;
+    public static final int COMMENT = 5;
+    // words classified as numbers by the lexer
+    public static final int INTEGER = 6;
+    public static final int FLOAT = 7;
+
     public final String token;
     public final int line;
+    public final int kind;
 
     Token(String str, int num) {
+        this(str, num, WORD);
+    }
+
+    Token(String str, int num, int kind) {
         token = str;
         line = num;
+        this.kind = kind;
     }
     
     public String toString() {
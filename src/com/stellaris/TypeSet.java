@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of types backed by a bit mask of type ordinals.
+ * <p>
+ * Iterates from the highest ordinal down,
+ * the same order as a TreeSet sorted by TypeComparator.
+ * There are only 2^11 distinct sets, instances are shared.
+ *
+ * @author donizyo
+ */
+public final class TypeSet extends AbstractSet<Type> {
+
+    private static final Type[] TYPES = Type.values();
+    public static final int ALL = (1 << TYPES.length) - 1;
+    private static final TypeSet[] CACHE = new TypeSet[ALL + 1];
+    public static final TypeSet EMPTY = valueOf(0);
+
+    private final int mask;
+
+    private TypeSet(int mask) {
+        this.mask = mask;
+    }
+
+    /**
+     *
+     * @param mask bit mask of type ordinals
+     * @return
+     */
+    public static TypeSet valueOf(int mask) {
+        TypeSet res;
+
+        if ((mask & ~ALL) != 0) {
+            throw new IllegalArgumentException(Integer.toHexString(mask));
+        }
+        res = CACHE[mask];
+        if (res == null) {
+            // a racing thread creates an equal instance, which is harmless
+            res = new TypeSet(mask);
+            CACHE[mask] = res;
+        }
+        return res;
+    }
+
+    public static int toMask(Type type) {
+        return type == null ? 0 : 1 << type.ordinal();
+    }
+
+    public static int toMask(Collection<Type> types) {
+        int res;
+
+        if (types instanceof TypeSet) {
+            return ((TypeSet) types).mask;
+        }
+        res = 0;
+        for (Type type : types) {
+            res |= toMask(type);
+        }
+        return res;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    public EnumSet<Type> toEnumSet() {
+        EnumSet<Type> res;
+
+        res = EnumSet.noneOf(Type.class);
+        for (Type type : this) {
+            res.add(type);
+        }
+        return res;
+    }
+
+    @Override
+    public int size() {
+        return Integer.bitCount(mask);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        return obj instanceof Type && (mask & toMask((Type) obj)) != 0;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (c instanceof TypeSet) {
+            return (((TypeSet) c).mask & ~mask) == 0;
+        }
+        return super.containsAll(c);
+    }
+
+    @Override
+    public Iterator<Type> iterator() {
+        return new Iterator<Type>() {
+            private int rest = mask;
+
+            @Override
+            public boolean hasNext() {
+                return rest != 0;
+            }
+
+            @Override
+            public Type next() {
+                int i;
+
+                if (rest == 0) {
+                    throw new NoSuchElementException();
+                }
+                i = 31 - Integer.numberOfLeadingZeros(rest);
+                rest &= ~(1 << i);
+                return TYPES[i];
+            }
+        };
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.checksum;
+
+import com.stellaris.util.Digest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Digests a list of files on a thread pool and combines the per-file
+ * digests into one aggregate digest, in list order.
+ * <p>
+ * Files are handed out in batches of roughly {@link #BATCH_SIZE} bytes,
+ * so that thousands of small script files do not cost a task each;
+ * the aggregate is fed as soon as the leading batches are done.
+ *
+ * @author donizyo
+ */
+public class ChecksumEngine {
+
+    private static final int BATCH_SIZE = 0x400000;
+    private static final int BUFFER_SIZE = 0x100000;
+    // files larger than this are mapped instead of read
+    private static final long MAP_THRESHOLD = 0x1000000L;
+    private static final long MAP_SIZE = 0x10000000L;
+    private static final ThreadLocal<ByteBuffer> BUFFER
+            = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private final String algorithm;
+    private final int parallelism;
+
+    public ChecksumEngine() {
+        this(Digest.DEFAULT_ALGORITHM,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    public ChecksumEngine(String algorithm, int parallelism) {
+        if (algorithm == null) {
+            throw new NullPointerException();
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException();
+        }
+        // fail early on unknown algorithms
+        newMessageDigest(algorithm);
+        this.algorithm = algorithm;
+        this.parallelism = parallelism;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    private static MessageDigest newMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalArgumentException(algorithm, ex);
+        }
+    }
+
+    /**
+     *
+     * @param files
+     * @return digest of the concatenated per-file digests
+     */
+    public Digest digest(List<File> files) {
+        ExecutorService executor;
+        List<Future<byte[][]>> futures;
+        MessageDigest aggregate;
+
+        aggregate = newMessageDigest(algorithm);
+        if (parallelism == 1) {
+            for (byte[] result : new Batch(files).call()) {
+                aggregate.update(result);
+            }
+            return new Digest(aggregate.digest());
+        }
+        executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            futures = new ArrayList<>();
+            for (List<File> batch : split(files)) {
+                futures.add(executor.submit(new Batch(batch)));
+            }
+            for (Future<byte[][]> future : futures) {
+                for (byte[] result : future.get()) {
+                    aggregate.update(result);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Digest(aggregate.digest());
+    }
+
+    private static List<List<File>> split(List<File> files) {
+        List<List<File>> res;
+        List<File> batch;
+        long size;
+
+        res = new ArrayList<>();
+        batch = new ArrayList<>();
+        size = 0;
+        for (File file : files) {
+            batch.add(file);
+            size += file.length();
+            if (size >= BATCH_SIZE) {
+                res.add(batch);
+                batch = new ArrayList<>();
+                size = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            res.add(batch);
+        }
+        return res;
+    }
+
+    private class Batch implements Callable<byte[][]> {
+
+        private final List<File> files;
+
+        private Batch(List<File> files) {
+            this.files = files;
+        }
+
+        @Override
+        public byte[][] call() {
+            MessageDigest md;
+            byte[][] res;
+            int i;
+
+            md = newMessageDigest(algorithm);
+            res = new byte[files.size()][];
+            i = 0;
+            for (File file : files) {
+                update(md, file);
+                res[i++] = md.digest();
+            }
+            return res;
+        }
+
+        private void update(MessageDigest md, File file) {
+            ByteBuffer buffer;
+            long size, pos;
+
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);) {
+                size = channel.size();
+                if (size > MAP_THRESHOLD) {
+                    for (pos = 0; pos < size; pos += MAP_SIZE) {
+                        md.update(channel.map(FileChannel.MapMode.READ_ONLY,
+                                pos, Math.min(MAP_SIZE, size - pos)));
+                    }
+                    return;
+                }
+                buffer = BUFFER.get();
+                buffer.clear();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(file.getPath(), ex);
+            }
+        }
+    }
+}
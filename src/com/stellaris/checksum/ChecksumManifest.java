@@ -24,8 +24,11 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +36,6 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.*;
 
 /**
  *
@@ -43,6 +45,24 @@ public class ChecksumManifest {
 
     private static final int DEFAULT_INITSIZE = 16;
     private static final String DEFAULT_FILENAME = "checksum_manifest.txt";
+    private static final Comparator<File> PATH_ORDER = new Comparator<File>() {
+        @Override
+        public int compare(File a, File b) {
+            return a.getPath().compareTo(b.getPath());
+        }
+    };
+    private final ChecksumEngine engine;
+
+    public ChecksumManifest() {
+        this(new ChecksumEngine());
+    }
+
+    public ChecksumManifest(ChecksumEngine engine) {
+        if (engine == null) {
+            throw new NullPointerException();
+        }
+        this.engine = engine;
+    }
 
     private String scan(String line, Pattern pattern, String skey) {
         Matcher matcher;
@@ -64,24 +84,6 @@ public class ChecksumManifest {
         return value;
     }
 
-    private Digest digest(File file, Checksum checksum) {
-        Digest digest;
-
-        if (checksum == null) {
-            digest = new Digest(file);
-        } else {
-            digest = new Digest(file, checksum);
-        }
-        return digest;
-    }
-
-    private Digest digest(File file, String algorithm) {
-        Digest digest;
-
-        digest = new Digest(file, algorithm);
-        return digest;
-    }
-
     private void createFilter(Map<String, List<ChecksumEntry>> map,
             String type, String name, boolean recursive, String extension) {
         ChecksumEntry entry;
@@ -182,28 +184,47 @@ public class ChecksumManifest {
         }
     }
 
-    public void load(String path) {
+    /**
+     *
+     * @param path game directory
+     * @return aggregate digest of the files listed by the manifest,
+     * or null if there is no manifest
+     */
+    public Digest load(String path) {
         File root;
         File file;
         Map<String, List<ChecksumEntry>> map;
         Map<String, ChecksumEntry> entries;
+        Digest result;
 
         root = new File(path);
-        map = new HashMap<>(DEFAULT_INITSIZE);
-        entries = new HashMap<>(DEFAULT_INITSIZE);
+        // keep manifest order, it determines the aggregate digest
+        map = new LinkedHashMap<>(DEFAULT_INITSIZE);
+        entries = new LinkedHashMap<>(DEFAULT_INITSIZE);
         // load checksum_manifest.txt
         file = new File(root, DEFAULT_FILENAME);
         if (!file.isFile()) {
-            return;
+            return null;
         }
         parse(file, map);
         // generate file filters
         integrate(map, entries);
         // dig into root directory
-        filter(root, entries);
+        result = engine.digest(filter(root, entries));
+        Debug.out.format("%s=\"%s\"%n",
+                engine.getAlgorithm(), result.digest().toLowerCase());
+        return result;
     }
 
-    private void filter(File root, Map<String, ChecksumEntry> map) {
+    /**
+     * Collect files covered by the manifest: directories in manifest order,
+     * files of each directory sorted by path, then the game binaries
+     *
+     * @param root
+     * @param map
+     * @return
+     */
+    private List<File> filter(File root, Map<String, ChecksumEntry> map) {
         Set<String> keyset;
         File file;
         ChecksumEntry entry;
@@ -211,18 +232,12 @@ public class ChecksumManifest {
         Queue<File> dirs;
         Queue<File> files;
         File dir;
-        Checksum checksum;
-        String algorithm;
-        Digest result;
+        List<File> list;
+        List<File> res;
         BinaryFileFilter bff;
 
         keyset = map.keySet();
-        //checksum = new CRC32();
-        //checksum = new Adler32();
-        checksum = null;
-        //checksum = new BSD();
-        algorithm = "MD5";
-        result = null;
+        res = new ArrayList<>();
         for (String key : keyset) {
             file = new File(root, key);
             if (!file.isDirectory()) {
@@ -238,6 +253,7 @@ public class ChecksumManifest {
             filter = (FileFilter) entry;
             file.listFiles(filter);
             dirs = entry.getDirs();
+            list = new ArrayList<>();
             while (!dirs.isEmpty()) {
                 // fill 'files' queue
                 dir = dirs.remove();
@@ -245,42 +261,20 @@ public class ChecksumManifest {
                 dir.listFiles(filter);
                 // retrieve 'files' queue
                 files = entry.getFiles();
-                while (!files.isEmpty()) {
-                    // retrieve a file
-                    file = files.remove();
-                    // digest a file
-                    if (checksum == null && algorithm != null) {
-                        result = digest(file, algorithm);
-                    } else {
-                        result = digest(file, checksum);
-                    }
-                }
+                list.addAll(files);
+                files.clear();
             }
+            // independent of the order of File.listFiles
+            Collections.sort(list, PATH_ORDER);
+            res.addAll(list);
         }
 
         bff = new BinaryFileFilter();
         root.listFiles(bff);
-        files = bff.getFiles();
-        while (!files.isEmpty()) {
-            file = files.remove();
-            if (checksum == null && algorithm != null) {
-                result = digest(file, algorithm);
-            } else {
-                result = digest(file, checksum);
-            }
-        }
-
-        if (checksum == null) {
-            Debug.out.format("%s=\"%s\"%n",
-                    algorithm == null ? Digest.DEFAULT_ALGORITHM : algorithm,
-                    result.digest().toLowerCase());
-        } else {
-            // test output
-            long value = checksum.getValue();
-            //value &= 0xffff;
-            Debug.out.format("%s=\"%x\"%n",
-                    checksum.getClass().getSimpleName(), value);
-        }
+        list = new ArrayList<>(bff.getFiles());
+        Collections.sort(list, PATH_ORDER);
+        res.addAll(list);
+        return res;
     }
 
     public static void main(String[] args) {
@@ -19,6 +19,10 @@ package com.stellaris.io;
 import com.stellaris.test.Debug;
 import java.io.*;
 import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,6 +32,7 @@ import java.util.logging.Logger;
  */
 public class AbstractLexer implements AutoCloseable {
 
+    private static final int BUFFER_SIZE = 65536;
     private Reader reader;
     private CharBuffer buffer;
     private CharBuffer bupher;
@@ -35,7 +40,123 @@ public class AbstractLexer implements AutoCloseable {
     private boolean isEOF;
 
     protected AbstractLexer(Reader in) throws IOException {
-        this(in, 65536);
+        this(in, BUFFER_SIZE);
+    }
+
+    /**
+     * Read the whole file into memory and decode it at once,
+     * so that lines never straddle two buffers
+     *
+     * @param file
+     * @throws IOException
+     */
+    protected AbstractLexer(File file) throws IOException {
+        this(read(file));
+    }
+
+    /**
+     * Read into a heap buffer rather than mapping the file, a mapping
+     * would keep the file locked on Windows until it is collected,
+     * while the content is decoded and copied right away anyway
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private static ByteBuffer read(File file) throws IOException {
+        ByteBuffer res;
+        long size;
+
+        try (FileInputStream input = new FileInputStream(file);
+                FileChannel channel = input.getChannel();) {
+            size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            res = ByteBuffer.allocate((int) size);
+            while (res.hasRemaining()) {
+                if (channel.read(res) < 0) {
+                    // the file has shrunk meanwhile
+                    break;
+                }
+            }
+            res.flip();
+            return res;
+        }
+    }
+
+    /**
+     * Decode UTF-8 content at once, e.g. an inflated archive entry;
+     * the buffer can be reused as soon as the constructor returns
+     *
+     * @param bytes
+     */
+    protected AbstractLexer(ByteBuffer bytes) {
+        buffer = decode(bytes);
+        reader = null;
+        bupher = null;
+        line = 0;
+        // there is nothing left to read
+        isEOF = true;
+    }
+
+    /**
+     * Decode a UTF-8 buffer, skipping the byte order mark
+     * just like BOMReader does
+     *
+     * @param in
+     * @return
+     */
+    private static CharBuffer decode(ByteBuffer in) {
+        CharsetDecoder decoder;
+        CharBuffer out;
+        char[] hb;
+        int pos, len;
+        int i;
+        byte b;
+
+        if (startsWith(in, 0xEF, 0xBB, 0xBF)) {
+            in.position(3);
+        }
+        pos = in.position();
+        len = in.remaining();
+        // UTF-8 never yields more chars than bytes
+        hb = new char[len];
+        // fast path for the ASCII part
+        i = 0;
+        while (i < len) {
+            b = in.get(pos + i);
+            if (b < 0) {
+                break;
+            }
+            hb[i++] = (char) b;
+        }
+        if (i == len) {
+            return CharBuffer.wrap(hb, 0, len);
+        }
+        in.position(pos + i);
+        // the same replacement as InputStreamReader does
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        out = CharBuffer.wrap(hb, i, len - i);
+        decoder.decode(in, out, true);
+        decoder.flush(out);
+        return CharBuffer.wrap(hb, 0, out.position());
+    }
+
+    private static boolean startsWith(ByteBuffer in, int... bom) {
+        int i;
+
+        if (in.remaining() < bom.length) {
+            return false;
+        }
+        for (i = 0; i < bom.length; i++) {
+            if ((in.get(i) & 0xFF) != bom[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     protected AbstractLexer(Reader in, int bufferSize) throws IOException {
@@ -56,6 +177,11 @@ public class AbstractLexer implements AutoCloseable {
         }
         close();
         reader = in;
+        if (bupher == null) {
+            // leave whole-file mode
+            buffer = CharBuffer.allocate(BUFFER_SIZE);
+            bupher = CharBuffer.allocate(BUFFER_SIZE);
+        }
         buffer.clear();
         bupher.clear();
         line = 0;
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.localisation;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only char storage, either a char array on the Java heap
+ * or a direct buffer outside of it
+ *
+ * @author donizyo
+ */
+final class CharArena {
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    // a direct buffer is sized in bytes, two per char
+    private static final int MAX_DIRECT_CAPACITY = MAX_CAPACITY / 2;
+    private final boolean direct;
+    private final int maxCapacity;
+    // exactly one of array and buffer is used
+    private char[] array;
+    private CharBuffer buffer;
+    private int capacity;
+    private int size;
+
+    CharArena(int capacity, boolean direct) {
+        this.direct = direct;
+        maxCapacity = direct ? MAX_DIRECT_CAPACITY : MAX_CAPACITY;
+        // the initial capacity is a hint, growth checks the limit
+        this.capacity = Math.min(Math.max(capacity, 16), maxCapacity);
+        if (direct) {
+            buffer = allocate(this.capacity);
+        } else {
+            array = new char[this.capacity];
+        }
+    }
+
+    private static CharBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 2).asCharBuffer();
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     *
+     * @return number of chars stored
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param src
+     * @param off
+     * @param len
+     * @return offset of the chars appended
+     */
+    int append(char[] src, int off, int len) {
+        CharBuffer dup;
+        int res;
+
+        res = size;
+        ensureCapacity((long) size + len);
+        if (direct) {
+            dup = buffer.duplicate();
+            dup.position(size);
+            dup.put(src, off, len);
+        } else {
+            System.arraycopy(src, off, array, size, len);
+        }
+        size += len;
+        return res;
+    }
+
+    /**
+     * Release the unused capacity
+     */
+    void trimToSize() {
+        if (size < capacity) {
+            resize(Math.max(size, 16));
+        }
+    }
+
+    private void ensureCapacity(long min) {
+        if (min <= capacity) {
+            return;
+        }
+        if (min > maxCapacity) {
+            throw new OutOfMemoryError("Localisation text too large");
+        }
+        resize((int) Math.min(Math.max(min, capacity * 2L), maxCapacity));
+    }
+
+    private void resize(int newCapacity) {
+        CharBuffer dup;
+
+        if (direct) {
+            dup = buffer.duplicate();
+            dup.position(0);
+            dup.limit(size);
+            buffer = allocate(newCapacity);
+            buffer.duplicate().put(dup);
+        } else {
+            array = Arrays.copyOf(array, newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    char charAt(int i) {
+        return direct ? buffer.get(i) : array[i];
+    }
+
+    String toString(int off, int len) {
+        CharBuffer dup;
+        char[] chars;
+
+        if (!direct) {
+            return new String(array, off, len);
+        }
+        chars = new char[len];
+        dup = buffer.duplicate();
+        dup.position(off);
+        dup.get(chars);
+        return new String(chars);
+    }
+
+    boolean regionMatches(int off, char[] src, int srcOff, int len) {
+        int i;
+
+        for (i = 0; i < len; i++) {
+            if (charAt(off + i) != src[srcOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean regionMatches(int off, CharSequence s) {
+        int i, len;
+
+        len = s.length();
+        for (i = 0; i < len; i++) {
+            if (charAt(off + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.localisation;
+
+import java.util.Arrays;
+
+/**
+ * Interns char sequences into an arena, so that every distinct
+ * sequence is stored once and is known by a dense id.
+ * Hashes agree with String.hashCode, so strings are looked up
+ * without copying them into the arena.
+ * Not thread-safe.
+ *
+ * @author donizyo
+ */
+final class CharTable {
+
+    private final CharArena arena;
+    // per id
+    private int[] offsets;
+    private int[] lengths;
+    private int[] hashes;
+    private int size;
+    // open addressing, id + 1, 0 for an empty slot
+    private int[] slots;
+
+    CharTable(CharArena arena) {
+        this.arena = arena;
+        offsets = new int[16];
+        lengths = new int[16];
+        hashes = new int[16];
+        slots = new int[32];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int hash(char[] buf, int off, int len) {
+        int h, i;
+
+        h = 0;
+        for (i = 0; i < len; i++) {
+            h = 31 * h + buf[off + i];
+        }
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ h >>> 16;
+    }
+
+    /**
+     *
+     * @param buf
+     * @param off
+     * @param len
+     * @return id of the sequence, added if it is new
+     */
+    int intern(char[] buf, int off, int len) {
+        int h, i, id, mask;
+
+        h = hash(buf, off, len);
+        mask = slots.length - 1;
+        for (i = spread(h) & mask; slots[i] != 0; i = i + 1 & mask) {
+            id = slots[i] - 1;
+            if (hashes[id] == h && lengths[id] == len
+                    && arena.regionMatches(offsets[id], buf, off, len)) {
+                return id;
+            }
+        }
+        id = size;
+        if (id == offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(id * 2, 16));
+            lengths = Arrays.copyOf(lengths, Math.max(id * 2, 16));
+            hashes = Arrays.copyOf(hashes, Math.max(id * 2, 16));
+        }
+        offsets[id] = arena.append(buf, off, len);
+        lengths[id] = len;
+        hashes[id] = h;
+        slots[i] = id + 1;
+        ++size;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        int i, id, mask;
+
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (id = 0; id < size; id++) {
+            i = spread(hashes[id]) & mask;
+            while (slots[i] != 0) {
+                i = i + 1 & mask;
+            }
+            slots[i] = id + 1;
+        }
+    }
+
+    /**
+     *
+     * @param s
+     * @return id of the sequence, or -1 if it is unknown
+     */
+    int find(String s) {
+        int h, i, id, len, mask;
+
+        h = s.hashCode();
+        len = s.length();
+        mask = slots.length - 1;
+        for (i = spread(h) & mask; slots[i] != 0; i = i + 1 & mask) {
+            id = slots[i] - 1;
+            if (hashes[id] == h && lengths[id] == len
+                    && arena.regionMatches(offsets[id], s)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    void trimToSize() {
+        offsets = Arrays.copyOf(offsets, size);
+        lengths = Arrays.copyOf(lengths, size);
+        hashes = Arrays.copyOf(hashes, size);
+    }
+
+    String get(int id) {
+        return arena.toString(offsets[id], lengths[id]);
+    }
+
+    char charAt(int id, int index) {
+        return arena.charAt(offsets[id] + index);
+    }
+
+    /**
+     *
+     * @param id
+     * @param other
+     * @return the order of String.compareTo
+     */
+    int compare(int id, int other) {
+        int i, len, off, otherOff;
+        char c1, c2;
+
+        len = Math.min(lengths[id], lengths[other]);
+        off = offsets[id];
+        otherOff = offsets[other];
+        for (i = 0; i < len; i++) {
+            c1 = arena.charAt(off + i);
+            c2 = arena.charAt(otherOff + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return lengths[id] - lengths[other];
+    }
+
+    /**
+     *
+     * @param id
+     * @param s
+     * @return the order of String.compareTo
+     */
+    int compare(int id, String s) {
+        int i, len, off;
+        char c1, c2;
+
+        len = Math.min(lengths[id], s.length());
+        off = offsets[id];
+        for (i = 0; i < len; i++) {
+            c1 = arena.charAt(off + i);
+            c2 = s.charAt(i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return lengths[id] - s.length();
+    }
+
+    boolean startsWith(int id, String prefix) {
+        return lengths[id] >= prefix.length()
+                && arena.regionMatches(offsets[id], prefix);
+    }
+
+    int getLength(int id) {
+        return lengths[id];
+    }
+}
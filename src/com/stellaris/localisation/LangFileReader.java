@@ -19,235 +19,372 @@ package com.stellaris.localisation;
 import com.stellaris.test.Debug;
 import com.stellaris.util.BOMReader;
 import java.io.*;
-import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Streams entries of a localisation file, decoding it chunk by chunk.
+ * <p>
+ * Keys and values are exposed as ranges of a shared character array,
+ * which are only valid until the next entry is read.
  *
  * @author donizyo
  */
-public class LangFileReader {
+public class LangFileReader implements Closeable {
 
-    private static final int BUFFER_SIZE = 0x100000;
+    private static final int BUFFER_SIZE = 0x10000;
+    private static final int MIN_BUFFER_SIZE = 0x100;
     private final String langId;
     private final File file;
-    private CharBuffer buffer;
+    private final Reader reader;
+    // decoded characters, [position, limit) not consumed yet
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean header;
+    // current line, without line break
+    private int lineOffset, lineLength;
+    // current entry
+    private int keyOffset, keyLength;
+    private int digitOffset, digitLength;
+    private int valueOffset, valueLength;
+    private int priority;
 
     public LangFileReader(Language language, File file) throws IOException {
         this.langId = language.getLanguageID();
         this.file = file;
-        try (Reader reader = new BOMReader(file);) {
-            buffer = CharBuffer.allocate(BUFFER_SIZE);
-            reader.read(buffer);
-            buffer.flip();
+        // UTF-8 never decodes to more characters than bytes
+        buffer = new char[(int) Math.max(MIN_BUFFER_SIZE,
+                Math.min(file.length() + 1, BUFFER_SIZE))];
+        reader = new BOMReader(file);
+    }
+
+    /**
+     * Keep unconsumed characters and decode more of the file
+     *
+     * @return false if the end of file is reached
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        int n;
+
+        if (eof) {
+            return false;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            // a single line longer than the buffer
+            buffer = Arrays.copyOf(buffer, buffer.length << 1);
+        }
+        n = reader.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            eof = true;
+            return false;
         }
+        limit += n;
+        return true;
     }
 
-    public CharBuffer nextLine() {
-        CharBuffer res;
+    /**
+     * Advance to the next non-blank line, leading white spaces skipped
+     *
+     * @return false at the end of file
+     * @throws IOException
+     */
+    private boolean nextLine() throws IOException {
+        int i;
         char c;
-        int src, dst, pos;
-
-        if (buffer.hasRemaining()) {
-            res = buffer;
-            do {
-                c = res.get();
-                if (!res.hasRemaining())
-                    return null;
-            } while (Character.isWhitespace(c));
-            pos = res.position();
-            src = pos - 1;
-            res.position(src);
-            res = res.slice();
-            while (true) {
-                if (!res.hasRemaining())
-                    throwEOF(res);
-                c = res.get();
-                if (c == '\r') {
-                    c = res.get();
-                    if (c != '\n')
-                        throw new IllegalStateException(String.valueOf(c));
-                    break;
-                } else if (c == '\n') {
-                    break;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            if (!Character.isWhitespace(buffer[position])) {
+                break;
+            }
+            ++position;
+        }
+        // relative to position, which is moved by fill()
+        i = 0;
+        while (true) {
+            if (position + i == limit && !fill()) {
+                // last line without line break
+                lineOffset = position;
+                lineLength = i;
+                position = limit;
+                return true;
+            }
+            c = buffer[position + i];
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                if (position + i + 1 == limit && !fill()) {
+                    throw new IllegalStateException("EOF");
                 }
+                c = buffer[position + i + 1];
+                if (c != '\n') {
+                    throw new IllegalStateException(String.valueOf(c));
+                }
+                break;
             }
-            buffer = res.slice();
-
-            pos = res.position();
-            dst = pos - 1;
-            res.position(dst);
-            res.flip();
-        } else {
-            res = null;
+            ++i;
         }
+        lineOffset = position;
+        lineLength = i;
+        position += i + (buffer[position + i] == '\r' ? 2 : 1);
+        return true;
+    }
 
-        return res;
+    private String getLine() {
+        return new String(buffer, lineOffset, lineLength);
     }
 
-    private static void logToken(String token, CharBuffer cbuf) {
+    private static void logToken(String token, char[] buf, int off, int len) {
         if (!Debug.DEBUG) {
             return;
         }
         Debug.out.format("[%s] pos=%d, limit=%d, str=\"%s\"%n",
                 token,
-                cbuf.position(),
-                cbuf.limit(),
-                cbuf.toString()
+                off,
+                off + len,
+                new String(buf, off, len)
         );
     }
 
-    private static void throwEOF(CharBuffer cbuf) {
-        int pos = cbuf.position();
-        int limit = cbuf.limit();
-        cbuf.rewind();
+    private void throwEOF(int pos) {
         throw new IllegalStateException(String.format(
                 "EOF: pos=%d, limit=%d, str=\"%s\"",
-                pos,
-                limit,
-                cbuf.toString()
+                pos - lineOffset,
+                lineLength,
+                getLine()
         ));
     }
 
-    public void loadInto(LocalisationMap map) {
-        CharBuffer line;
+    /**
+     * Read the next entry, skipping comments
+     *
+     * @return false at the end of file
+     * @throws IOException
+     */
+    public boolean nextEntry() throws IOException {
         String str;
-        char c;
-        CharBuffer key;
-        CharBuffer digit;
-        CharBuffer value;
-        int pos;
-        int dst;
-        int state;
-
-        line = nextLine();
-        str = line.toString();
-        if (!str.startsWith(langId)) {
-            throw new AssertionError(str);
+
+        if (!header) {
+            if (!nextLine()) {
+                throw new AssertionError("Empty file: " + file);
+            }
+            str = getLine();
+            if (!str.startsWith(langId)) {
+                throw new AssertionError(str);
+            }
+            header = true;
+        }
+        while (nextLine()) {
+            logToken("Line", buffer, lineOffset, lineLength);
+            if (buffer[lineOffset] == '#') {
+                continue;
+            }
+            parseEntry();
+            return true;
         }
-        while ((line = nextLine()) != null) {
-            logToken("Line", line);
+        return false;
+    }
+
+    private void parseEntry() {
+        char[] buf;
+        char c;
+        int i, end;
+        long value;
+        boolean escaped;
 
-            // key
-            key = line.duplicate();
-            c = line.get();
-            if (c == '#') {
+        buf = buffer;
+        i = lineOffset;
+        end = lineOffset + lineLength;
+        // key
+        while (true) {
+            if (i == end) {
+                throwEOF(i);
+            }
+            c = buf[i++];
+            if (c >= 'a' && c <= 'z'
+                    || c >= 'A' && c <= 'z'
+                    || c >= '0' && c <= '9'
+                    || c == '_'
+                    || c == '.'
+                    || c == '-') {
                 continue;
             }
-            while (true) {
-                if (!key.hasRemaining()) {
-                    throwEOF(key);
-                }
-                c = key.get();
-                if (c >= 'a' && c <= 'z'
-                        || c >= 'A' && c <= 'z'
-                        || c >= '0' && c <= '9'
-                        || c == '_'
-                        || c == '.'
-                        || c == '-') {
-                    continue;
+            if (c == ':') {
+                keyOffset = lineOffset;
+                keyLength = i - 1 - lineOffset;
+                logToken("Key", buf, keyOffset, keyLength);
+                break;
+            }
+            // non-accepting state
+            throw new IllegalStateException(String.format(
+                    "Illegal character '%c' in%n%s%n",
+                    c,
+                    getLine()
+            ));
+        }
+
+        // priority
+        digitOffset = i;
+        value = 0;
+        while (true) {
+            if (i == end) {
+                throwEOF(i);
+            }
+            c = buf[i++];
+            if (c >= '0' && c <= '9') {
+                if (value <= Integer.MAX_VALUE) {
+                    value = value * 10 + (c - '0');
                 }
-                if (c == ':') {
-                    digit = key.slice();
-
-                    pos = key.position();
-                    dst = pos - 1;
-                    key.position(dst);
-                    key.flip();
-                    logToken("Key", key);
+                continue;
+            }
+            if (c != ' ') {
+                throw new IllegalStateException(String.valueOf(c));
+            }
+            digitLength = i - 1 - digitOffset;
+            if (i == end) {
+                throwEOF(i);
+            }
+            c = buf[i++];
+            if (c != '"') {
+                throw new IllegalStateException(String.valueOf(c));
+            }
+            logToken("Digit", buf, digitOffset, digitLength);
+            break;
+        }
+        if (digitLength == 0 || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \""
+                    + new String(buf, digitOffset, digitLength) + "\"");
+        }
+        priority = (int) value;
+
+        // value
+        valueOffset = i;
+        escaped = false;
+        while (true) {
+            if (i == end) {
+                throwEOF(i);
+            }
+            c = buf[i++];
+            if (c == '\\') {
+                escaped = true;
+            } else {
+                if (c == '"' && !escaped) {
+                    valueLength = i - 1 - valueOffset;
+                    logToken("Value", buf, valueOffset, valueLength);
                     break;
                 }
-                // non-accepting state
-                line.rewind();
-                throw new IllegalStateException(String.format(
-                        "Illegal character '%c' in%n%s%n",
-                        c,
-                        line.toString()
-                ));
+                escaped = false;
             }
+        }
+    }
 
-            // priority
-            while (true) {
-                if (!digit.hasRemaining()) {
-                    throwEOF(digit);
-                }
-                c = digit.get();
-                if (c >= '0' && c <= '9') {
-                    continue;
-                }
-                if (c != ' ') {
-                    throw new IllegalStateException(String.valueOf(c));
-                }
-                pos = digit.position();
-                dst = pos - 1;
+    /**
+     *
+     * @return shared character array, do not modify
+     */
+    public char[] getBuffer() {
+        return buffer;
+    }
 
-                c = digit.get();
-                if (c != '"') {
-                    throw new IllegalStateException(String.valueOf(c));
-                }
+    public int getKeyOffset() {
+        return keyOffset;
+    }
 
-                value = digit.slice();
+    public int getKeyLength() {
+        return keyLength;
+    }
 
-                digit.position(dst);
-                digit.flip();
-                logToken("Digit", digit);
-                break;
-            }
+    public String getKey() {
+        return new String(buffer, keyOffset, keyLength);
+    }
 
-            // value
-            state = 0;
-            while (true) {
-                if (!value.hasRemaining()) {
-                    throwEOF(value);
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getValueOffset() {
+        return valueOffset;
+    }
+
+    public int getValueLength() {
+        return valueLength;
+    }
+
+    public String getValue() {
+        return new String(buffer, valueOffset, valueLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Black-box debugging, check that the entry read is found in the line
+     */
+    private void validate() {
+        String result;
+        String sLine;
+
+        result = String.format("%s:%s \"%s\"",
+                new String(buffer, keyOffset, keyLength),
+                new String(buffer, digitOffset, digitLength),
+                new String(buffer, valueOffset, valueLength)
+        );
+        sLine = getLine();
+        if (!sLine.contains(result)) {
+            Debug.err.println(result);
+            throw new AssertionError(sLine);
+        }
+    }
+
+    /**
+     * Read all remaining entries into the map, then close the file
+     *
+     * @param map
+     * @return number of entries read
+     * @throws IOException
+     */
+    public int loadInto(LocalisationMap map) throws IOException {
+        int res;
+
+        res = 0;
+        try {
+            while (nextEntry()) {
+                ++res;
+                // put
+                if (map != null) {
+                    map.put(file, buffer, keyOffset, keyLength, priority,
+                            valueOffset, valueLength);
                 }
-                c = value.get();
-
-                if (c == '\\') {
-                    state = 1;
-                } else {
-                    if (c == '"') {
-                        if (state != 1) {
-                            pos = value.position();
-                            dst = pos - 1;
-
-                            value.position(dst);
-                            value.flip();
-                            logToken("Value", value);
-                            break;
-                        }
-                    }
-                    state = 0;
+                if (Debug.VALIDATE_LOCALISATION) {
+                    validate();
                 }
+                // white-box debugging
+                /*
+                Debug.out.format("%-64s %s \"%s\"%n",
+                        getKey(),
+                        priority,
+                        getValue()
+                );
+                //*/
             }
-
-            // put
-            if (map != null) {
-                map.put(file, key, digit, value);
-            }
-            // black-box debugging
-            //*
-            String result = String.format("%s:%s \"%s\"",
-                    key,
-                    digit,
-                    value
-            );
-            line.rewind();
-            String sLine = line.toString();
-            if (!sLine.contains(result)) {
-                Debug.err.println(result);
-                throw new AssertionError(sLine);
-            }
-            //*/
-            // white-box debugging
-            /*
-            Debug.out.format("%-64s %s \"%s\"%n",
-                    key.toString(),
-                    digit.toString(),
-                    value.toString()
-            );
-            //*/
+        } finally {
+            close();
         }
+        return res;
     }
 
     public static void main(String[] args) {
@@ -16,6 +16,9 @@
  */
 package com.stellaris.localisation;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author donizyo
@@ -24,11 +27,38 @@ public class LangFilterFactory {
 
     public static final LangFilter LANG_ENGLISH;
     private static final LangFilterFactory FACTORY;
+    // language name, language id
+    private static final String[][] LANGUAGES = {
+        {"English", "l_english"},
+        {"Brazilian Portuguese", "l_braz_por"},
+        {"French", "l_french"},
+        {"German", "l_german"},
+        {"Polish", "l_polish"},
+        {"Russian", "l_russian"},
+        {"Spanish", "l_spanish"},
+        {"Simplified Chinese", "l_simp_chinese"},
+        {"Japanese", "l_japanese"},
+        {"Korean", "l_korean"}
+    };
 
     public LangFilter getFilter(String langName, String langId) {
         return new LangFilter(langName, langId);
     }
 
+    /**
+     *
+     * @return new filters of all languages supported by the game
+     */
+    public List<LangFilter> getFilters() {
+        List<LangFilter> res;
+
+        res = new ArrayList<>(LANGUAGES.length);
+        for (String[] lang : LANGUAGES) {
+            res.add(getFilter(lang[0], lang[1]));
+        }
+        return res;
+    }
+
     public static LangFilterFactory getFactory() {
         return FACTORY;
     }
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.localisation;
+
+import com.stellaris.test.Debug;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search index over the keys and values of a localisation map.
+ * <p>
+ * Keys are sorted for prefix queries. Values are searched for substrings
+ * ignoring case through an inverted index of their trigrams, candidates
+ * are then verified against the text. Values of every priority are
+ * searched.
+ * <p>
+ * The index is a snapshot of the keys and values loaded when it was
+ * created, queries share the lock of the map.
+ *
+ * @author donizyo
+ */
+public class LocalisationIndex {
+
+    private static final int GRAM = 3;
+    private static final long GRAM_MASK = (1L << 16 * GRAM) - 1;
+    private final LocalisationMap map;
+    private final CharTable keys;
+    private final CharTable values;
+    // key ids in key order
+    private final int[] sortedKeys;
+    // key id -> position in sortedKeys
+    private final int[] ranks;
+    // values interned when the index was built
+    private final int valueCount;
+    // value id -> key ids, rows of valueKeys
+    private final int[] valueStarts;
+    private final int[] valueKeys;
+    // distinct trigrams by id, open addressing over id + 1
+    private long[] grams;
+    private int[] gramSlots;
+    private int gramCount;
+    // trigram id -> value ids in ascending order, rows of postings
+    private int[] postingStarts;
+    private int[] postings;
+
+    /**
+     * Only called with the lock of the map held
+     *
+     * @param map
+     */
+    LocalisationIndex(LocalisationMap map) {
+        int i;
+
+        this.map = map;
+        keys = map.getKeyTable();
+        values = map.getValueTable();
+        sortedKeys = sortKeys();
+        ranks = new int[sortedKeys.length];
+        for (i = 0; i < sortedKeys.length; i++) {
+            ranks[sortedKeys[i]] = i;
+        }
+        valueCount = values.size();
+        valueStarts = new int[valueCount + 1];
+        valueKeys = mapValues();
+        indexValues();
+    }
+
+    private int[] sortKeys() {
+        Integer[] ids;
+        int[] res;
+        int i;
+
+        ids = new Integer[keys.size()];
+        for (i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer id, Integer other) {
+                return keys.compare(id, other);
+            }
+        });
+        res = new int[ids.length];
+        for (i = 0; i < ids.length; i++) {
+            res[i] = ids[i];
+        }
+        return res;
+    }
+
+    private int[] mapValues() {
+        int[] res, next;
+        int key, entry, i;
+
+        for (key = 0; key < sortedKeys.length; key++) {
+            for (entry = map.getFirstEntry(key); entry >= 0;
+                    entry = map.getNextEntry(entry)) {
+                ++valueStarts[map.getValueId(entry) + 1];
+            }
+        }
+        for (i = 1; i < valueStarts.length; i++) {
+            valueStarts[i] += valueStarts[i - 1];
+        }
+        res = new int[valueStarts[valueStarts.length - 1]];
+        next = Arrays.copyOf(valueStarts, valueStarts.length - 1);
+        for (key = 0; key < sortedKeys.length; key++) {
+            for (entry = map.getFirstEntry(key); entry >= 0;
+                    entry = map.getNextEntry(entry)) {
+                res[next[map.getValueId(entry)]++] = key;
+            }
+        }
+        return res;
+    }
+
+    private boolean isReferenced(int value) {
+        return valueStarts[value] < valueStarts[value + 1];
+    }
+
+    private void indexValues() {
+        int[] counts, last, next;
+        long gram;
+        int value, len, id, i;
+
+        grams = new long[1024];
+        gramSlots = new int[2048];
+        counts = new int[1024];
+        last = new int[1024];
+        // count the values of every trigram
+        for (value = 0; value < valueCount; value++) {
+            if (!isReferenced(value)) {
+                // replaced by a later file
+                continue;
+            }
+            len = values.getLength(value);
+            gram = 0;
+            for (i = 0; i < len; i++) {
+                gram = (gram << 16 | lower(values.charAt(value, i)))
+                        & GRAM_MASK;
+                if (i < GRAM - 1) {
+                    continue;
+                }
+                id = addGram(gram);
+                if (id == counts.length) {
+                    counts = Arrays.copyOf(counts, grams.length);
+                    last = Arrays.copyOf(last, grams.length);
+                }
+                if (counts[id] == 0 || last[id] != value) {
+                    last[id] = value;
+                    ++counts[id];
+                }
+            }
+        }
+        postingStarts = new int[gramCount + 1];
+        for (id = 0; id < gramCount; id++) {
+            postingStarts[id + 1] = postingStarts[id] + counts[id];
+        }
+        postings = new int[postingStarts[gramCount]];
+        next = Arrays.copyOf(postingStarts, gramCount);
+        Arrays.fill(last, -1);
+        for (value = 0; value < valueCount; value++) {
+            if (!isReferenced(value)) {
+                continue;
+            }
+            len = values.getLength(value);
+            gram = 0;
+            for (i = 0; i < len; i++) {
+                gram = (gram << 16 | lower(values.charAt(value, i)))
+                        & GRAM_MASK;
+                if (i < GRAM - 1) {
+                    continue;
+                }
+                id = findGram(gram);
+                if (last[id] != value) {
+                    last[id] = value;
+                    postings[next[id]++] = value;
+                }
+            }
+        }
+    }
+
+    private static char lower(char c) {
+        return Character.toLowerCase(c);
+    }
+
+    private static int spread(long gram) {
+        int h;
+
+        h = (int) (gram ^ gram >>> 32) * 0x9e3779b9;
+        return h ^ h >>> 16;
+    }
+
+    private int findGram(long gram) {
+        int i, id, mask;
+
+        mask = gramSlots.length - 1;
+        for (i = spread(gram) & mask; gramSlots[i] != 0; i = i + 1 & mask) {
+            id = gramSlots[i] - 1;
+            if (grams[id] == gram) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private int addGram(long gram) {
+        int i, id, mask;
+
+        mask = gramSlots.length - 1;
+        for (i = spread(gram) & mask; gramSlots[i] != 0; i = i + 1 & mask) {
+            id = gramSlots[i] - 1;
+            if (grams[id] == gram) {
+                return id;
+            }
+        }
+        id = gramCount;
+        if (id == grams.length) {
+            grams = Arrays.copyOf(grams, id * 2);
+        }
+        grams[id] = gram;
+        gramSlots[i] = id + 1;
+        ++gramCount;
+        if (gramCount * 2 > gramSlots.length) {
+            rehash(gramSlots.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        int i, id, mask;
+
+        gramSlots = new int[capacity];
+        mask = capacity - 1;
+        for (id = 0; id < gramCount; id++) {
+            i = spread(grams[id]) & mask;
+            while (gramSlots[i] != 0) {
+                i = i + 1 & mask;
+            }
+            gramSlots[i] = id + 1;
+        }
+    }
+
+    /**
+     *
+     * @return number of keys indexed
+     */
+    public int size() {
+        return sortedKeys.length;
+    }
+
+    /**
+     *
+     * @param prefix
+     * @return keys starting with prefix, in key order
+     */
+    public List<String> findByPrefix(String prefix) {
+        List<String> res;
+        int lo, hi, mid;
+
+        res = new ArrayList<>();
+        synchronized (map) {
+            lo = 0;
+            hi = sortedKeys.length;
+            while (lo < hi) {
+                mid = lo + hi >>> 1;
+                if (keys.compare(sortedKeys[mid], prefix) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            while (lo < sortedKeys.length
+                    && keys.startsWith(sortedKeys[lo], prefix)) {
+                res.add(keys.get(sortedKeys[lo++]));
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param text
+     * @return keys with a value containing text ignoring case, in key order
+     */
+    public List<String> findByValue(String text) {
+        List<String> res;
+        BitSet found;
+        char[] query;
+        long gram;
+        int from, to, id, value, i, j;
+
+        query = new char[text.length()];
+        for (i = 0; i < query.length; i++) {
+            query[i] = lower(text.charAt(i));
+        }
+        found = new BitSet(sortedKeys.length);
+        synchronized (map) {
+            if (query.length < GRAM) {
+                // too short for the trigrams, scan every value indexed
+                from = 0;
+                to = valueCount;
+            } else {
+                // candidates are the values of the rarest trigram
+                from = 0;
+                to = 0;
+                gram = 0;
+                for (i = 0; i < query.length; i++) {
+                    gram = (gram << 16 | query[i]) & GRAM_MASK;
+                    if (i < GRAM - 1) {
+                        continue;
+                    }
+                    id = findGram(gram);
+                    if (id < 0) {
+                        return Collections.emptyList();
+                    }
+                    if (i == GRAM - 1 || postingStarts[id + 1]
+                            - postingStarts[id] < to - from) {
+                        from = postingStarts[id];
+                        to = postingStarts[id + 1];
+                    }
+                }
+            }
+            for (i = from; i < to; i++) {
+                value = query.length < GRAM ? i : postings[i];
+                if (!isReferenced(value) || !contains(value, query)) {
+                    continue;
+                }
+                for (j = valueStarts[value]; j < valueStarts[value + 1]; j++) {
+                    found.set(ranks[valueKeys[j]]);
+                }
+            }
+            res = new ArrayList<>(found.cardinality());
+            for (i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+                res.add(keys.get(sortedKeys[i]));
+            }
+        }
+        return res;
+    }
+
+    private boolean contains(int value, char[] query) {
+        int len, i, j;
+
+        len = values.getLength(value);
+        for (i = 0; i + query.length <= len; i++) {
+            j = 0;
+            while (j < query.length
+                    && lower(values.charAt(value, i + j)) == query[j]) {
+                ++j;
+            }
+            if (j == query.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        File file;
+        LocalisationLoader loader;
+        Map<String, LocalisationMap> maps;
+        LocalisationIndex index;
+        List<String> result;
+        long time;
+
+        if (args.length < 3) {
+            return;
+        }
+        file = new File(args[0], "localisation");
+        try {
+            loader = new LocalisationLoader(file);
+            maps = loader.load(LangFilterFactory.getFactory().getFilters(),
+                    Runtime.getRuntime().availableProcessors());
+            for (LocalisationMap map : maps.values()) {
+                if (map.size() == 0) {
+                    continue;
+                }
+                time = System.nanoTime();
+                index = map.createIndex();
+                Debug.out.format("%s: %d keys indexed in %d ms%n",
+                        map.getLanguage().getLanguageName(), index.size(),
+                        (System.nanoTime() - time) / 1000000);
+                time = System.nanoTime();
+                result = index.findByPrefix(args[1]);
+                Debug.out.format("  prefix \"%s\": %d keys in %d us%n",
+                        args[1], result.size(),
+                        (System.nanoTime() - time) / 1000);
+                time = System.nanoTime();
+                result = index.findByValue(args[2]);
+                Debug.out.format("  value \"%s\": %d keys in %d us%n",
+                        args[2], result.size(),
+                        (System.nanoTime() - time) / 1000);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.localisation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the localisation files of several languages in parallel,
+ * one file per task, into one map per language
+ *
+ * @author donizyo
+ */
+public class LocalisationLoader {
+
+    private final File dir;
+    private final boolean direct;
+
+    /**
+     *
+     * @param dir the localisation directory,
+     * sub-directories are searched as well
+     */
+    public LocalisationLoader(File dir) {
+        this(dir, false);
+    }
+
+    /**
+     *
+     * @param dir the localisation directory,
+     * sub-directories are searched as well
+     * @param direct whether the maps keep their text in direct memory
+     */
+    public LocalisationLoader(File dir, boolean direct) {
+        this.dir = dir;
+        this.direct = direct;
+    }
+
+    private static void listFiles(File dir, Collection<LangFilter> filters) {
+        File[] files;
+
+        files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, filters);
+                continue;
+            }
+            for (LangFilter filter : filters) {
+                filter.accept(file);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param languages filters, which must not have queued files yet
+     * @param parallelism
+     * @return maps by language id, in the order of the filters
+     * @throws IOException
+     */
+    public Map<String, LocalisationMap> load(Collection<LangFilter> languages,
+            int parallelism) throws IOException {
+        ExecutorService executor;
+        Map<String, LocalisationMap> res;
+        List<Future<Integer>> futures;
+        List<File> files;
+        Queue<File> queue;
+        LocalisationMap map;
+        Throwable cause;
+
+        listFiles(dir, languages);
+        res = new LinkedHashMap<>();
+        executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            futures = new ArrayList<>();
+            for (final LangFilter language : languages) {
+                map = new LocalisationMap(language, direct);
+                res.put(language.getLanguageID(), map);
+                queue = language.getFiles();
+                files = new ArrayList<>(queue);
+                queue.clear();
+                // conflicts are resolved by path, the order is only
+                // for reproducible error reports
+                Collections.sort(files);
+                for (final File file : files) {
+                    final LocalisationMap dst = map;
+                    futures.add(executor.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws IOException {
+                            return new LangFileReader(language, file)
+                                    .loadInto(dst);
+                        }
+                    }));
+                }
+            }
+            for (Future<Integer> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+            for (LocalisationMap m : res.values()) {
+                m.trimToSize();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            executor.shutdownNow();
+        }
+        return res;
+    }
+}
@@ -25,15 +25,94 @@ import java.util.*;
 import java.util.Map.Entry;
 
 /**
+ * Localisation entries of one language.
+ * <p>
+ * Keys and values are interned as chars into a shared arena, which may
+ * live outside of the Java heap. Every key is a chain of entries sorted
+ * by priority, most keys have a single entry and need no further objects.
+ * <p>
+ * Files may be loaded concurrently, a single lock guards the map.
+ * When two entries share a key and a priority, the one from the file
+ * whose path sorts last wins, and within the same file the later entry
+ * wins, whatever the loading order.
  *
  * @author donizyo
  */
 public class LocalisationMap {
 
-    private final Map<String, SortedMap<Integer, Entry<File, String>>> map;
+    private static final int NONE = -1;
+    private final Language language;
+    private final CharArena arena;
+    private final CharTable keys;
+    private final CharTable values;
+    private final List<File> files;
+    private final Map<File, Integer> fileIds;
+    // per key, first entry of the chain
+    private int[] heads;
+    // per entry
+    private int[] priorities;
+    private int[] fileIndexes;
+    private int[] valueIds;
+    private int[] nexts;
+    private int entries;
 
     public LocalisationMap(Language language) {
-        map = new HashMap<>();
+        this(language, false);
+    }
+
+    /**
+     *
+     * @param language
+     * @param direct whether the text is kept in direct memory
+     */
+    public LocalisationMap(Language language, boolean direct) {
+        this.language = language;
+        arena = new CharArena(1 << 16, direct);
+        keys = new CharTable(arena);
+        values = new CharTable(arena);
+        files = new ArrayList<>();
+        fileIds = new HashMap<>();
+        heads = new int[16];
+        Arrays.fill(heads, NONE);
+        priorities = new int[16];
+        fileIndexes = new int[16];
+        valueIds = new int[16];
+        nexts = new int[16];
+    }
+
+    public Language getLanguage() {
+        return language;
+    }
+
+    /**
+     *
+     * @return number of keys
+     */
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    /**
+     *
+     * @return number of chars stored for keys and values
+     */
+    public synchronized int getTextLength() {
+        return arena.size();
+    }
+
+    /**
+     * Release the capacity kept for further entries,
+     * the map stays usable
+     */
+    public synchronized void trimToSize() {
+        arena.trimToSize();
+        keys.trimToSize();
+        values.trimToSize();
+        heads = Arrays.copyOf(heads, keys.size());
+        priorities = Arrays.copyOf(priorities, entries);
+        fileIndexes = Arrays.copyOf(fileIndexes, entries);
+        valueIds = Arrays.copyOf(valueIds, entries);
+        nexts = Arrays.copyOf(nexts, entries);
     }
 
     public void put(File file, CharBuffer key, CharBuffer digit, CharBuffer value) {
@@ -46,26 +125,150 @@ public class LocalisationMap {
         );
     }
 
+    public void put(File file, char[] buf, int keyOffset, int keyLength,
+            int priority, int valueOffset, int valueLength) {
+        put(file, buf, keyOffset, keyLength,
+                priority, buf, valueOffset, valueLength);
+    }
+
     public void put(File file, String key, int priority, String value) {
-        SortedMap<Integer, Entry<File, String>> m;
-        Entry<File, String> e;
-
-        m = get(key);
-        if (m == null) {
-            m = new TreeMap<>();
-            map.put(key, m);
-        }
-        e = m.get(priority);
-        if (e == null) {
-            e = new Pair(file, value);
-            m.put(priority, e);
+        put(file, key.toCharArray(), 0, key.length(),
+                priority, value.toCharArray(), 0, value.length());
+    }
+
+    private synchronized void put(File file,
+            char[] keyBuf, int keyOffset, int keyLength, int priority,
+            char[] valueBuf, int valueOffset, int valueLength) {
+        int fileIndex, key, value;
+        int i, prev, capacity;
+
+        fileIndex = getFileIndex(file);
+        key = keys.intern(keyBuf, keyOffset, keyLength);
+        if (key >= heads.length) {
+            capacity = heads.length;
+            heads = Arrays.copyOf(heads, Math.max(key + 1, capacity * 2 + 16));
+            Arrays.fill(heads, capacity, heads.length, NONE);
+        }
+        prev = NONE;
+        i = heads[key];
+        while (i != NONE && priorities[i] < priority) {
+            prev = i;
+            i = nexts[i];
+        }
+        if (i != NONE && priorities[i] == priority) {
+            if (overrides(fileIndex, fileIndexes[i])) {
+                // the old value stays in the arena
+                fileIndexes[i] = fileIndex;
+                valueIds[i] = values.intern(valueBuf, valueOffset, valueLength);
+            }
+            return;
+        }
+        value = values.intern(valueBuf, valueOffset, valueLength);
+        if (entries == nexts.length) {
+            capacity = Math.max(entries * 2, 16);
+            priorities = Arrays.copyOf(priorities, capacity);
+            fileIndexes = Arrays.copyOf(fileIndexes, capacity);
+            valueIds = Arrays.copyOf(valueIds, capacity);
+            nexts = Arrays.copyOf(nexts, capacity);
+        }
+        priorities[entries] = priority;
+        fileIndexes[entries] = fileIndex;
+        valueIds[entries] = value;
+        nexts[entries] = i;
+        if (prev == NONE) {
+            heads[key] = entries;
         } else {
-            throw new UnsupportedOperationException();
+            nexts[prev] = entries;
+        }
+        ++entries;
+    }
+
+    private int getFileIndex(File file) {
+        Integer res;
+
+        res = fileIds.get(file);
+        if (res == null) {
+            res = files.size();
+            files.add(file);
+            fileIds.put(file, res);
         }
+        return res;
+    }
+
+    private boolean overrides(int fileIndex, int oldFileIndex) {
+        return files.get(fileIndex).getPath()
+                .compareTo(files.get(oldFileIndex).getPath()) >= 0;
+    }
+
+    CharTable getKeyTable() {
+        return keys;
+    }
+
+    CharTable getValueTable() {
+        return values;
+    }
+
+    /**
+     *
+     * @param key key id
+     * @return entry of the lowest priority
+     */
+    int getFirstEntry(int key) {
+        return heads[key];
+    }
+
+    /**
+     *
+     * @param entry
+     * @return entry of the next priority, or -1 at the end of the chain
+     */
+    int getNextEntry(int entry) {
+        return nexts[entry];
+    }
+
+    int getValueId(int entry) {
+        return valueIds[entry];
     }
 
-    public SortedMap<Integer, Entry<File, String>> get(String key) {
-        return map.get(key);
+    /**
+     *
+     * @return a search index over the keys and values loaded so far
+     */
+    public synchronized LocalisationIndex createIndex() {
+        return new LocalisationIndex(this);
+    }
+
+    /**
+     *
+     * @param key
+     * @return a snapshot of the entries by priority, or null if key is unknown
+     */
+    public synchronized SortedMap<Integer, Entry<File, String>> get(String key) {
+        SortedMap<Integer, Entry<File, String>> res;
+        int i, id;
+
+        id = keys.find(key);
+        if (id < 0) {
+            return null;
+        }
+        res = new TreeMap<>();
+        for (i = heads[id]; i != NONE; i = nexts[i]) {
+            res.put(priorities[i], new Pair(files.get(fileIndexes[i]),
+                    values.get(valueIds[i])));
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param key
+     * @return value of the lowest priority, or null if key is unknown
+     */
+    public synchronized String getValue(String key) {
+        int id;
+
+        id = keys.find(key);
+        return id < 0 ? null : values.get(valueIds[heads[id]]);
     }
 
     private static class Pair implements Entry<File, String> {
@@ -95,47 +298,29 @@ public class LocalisationMap {
 
     }
 
-    public void list(PrintStream out) {
-        Set<String> keySet;
-        SortedMap<Integer, Entry<File, String>> m;
-        Integer firstKey;
-        Entry<File, String> e;
-        File file;
-        String value;
+    public synchronized void list(PrintStream out) {
+        int i, id, size;
 
         if (out == null) {
             out = Debug.out;
         }
-        keySet = map.keySet();
-        for (String key : keySet) {
-            m = get(key);
-            if (m == null) {
-                throw new AssertionError("Null tree map");
-            }
-            if (m.isEmpty()) {
-                throw new AssertionError("Empty tree map");
-            }
-            firstKey = m.firstKey();
-            if (firstKey == null) {
-                throw new AssertionError("Null integer first key");
-            }
-            e = m.get(firstKey);
-            if (e == null) {
-                throw new AssertionError("Null pair");
+        size = keys.size();
+        for (id = 0; id < size; id++) {
+            i = heads[id];
+            if (i == NONE) {
+                throw new AssertionError("Key without entries");
             }
-            file = e.getKey();
-            value = e.getValue();
-            out.format("%s: \"%s\" @ %s%n", key, value, file.getName());
+            out.format("%s: \"%s\" @ %s%n", keys.get(id),
+                    values.get(valueIds[i]),
+                    files.get(fileIndexes[i]).getName());
         }
     }
 
     public static void main(String[] args) {
         String root, path;
         File file;
-        LangFilter langFilter;
-        Queue<File> queue;
-        LangFileReader reader;
-        LocalisationMap map;
+        LocalisationLoader loader;
+        Map<String, LocalisationMap> maps;
 
         if (args.length < 2) {
             return;
@@ -144,16 +329,15 @@ public class LocalisationMap {
         path = "localisation";
         file = new File(root, path);
         try {
-            langFilter = LangFilterFactory.LANG_ENGLISH;
-            file.listFiles(langFilter);
-            queue = langFilter.getFiles();
-            map = new LocalisationMap(langFilter);
-            while (!queue.isEmpty()) {
-                file = queue.remove();
-                reader = new LangFileReader(langFilter, file);
-                reader.loadInto(map);
+            loader = new LocalisationLoader(file);
+            maps = loader.load(LangFilterFactory.getFactory().getFilters(),
+                    Runtime.getRuntime().availableProcessors());
+            for (LocalisationMap map : maps.values()) {
+                Debug.out.format("%-24s %d keys, %d chars%n",
+                        map.getLanguage().getLanguageName(),
+                        map.size(), map.getTextLength());
+                //map.list(Debug.out);
             }
-            //map.list(Debug.out);
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
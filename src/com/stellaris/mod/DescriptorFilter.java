@@ -23,43 +23,50 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * Collects mod descriptors, then loads the mods on a bounded thread pool.
+ * Loaded mods are queued in the order of their descriptor file names,
+ * whichever finishes first.
  *
  * @author donizyo
  */
 public class DescriptorFilter implements FileFilter {
 
     private static final String SUFFIX_MOD = ".mod";
+    private static final Pattern REMOTE_MOD = Pattern.compile("(?:ugc_)?\\d+");
 
     private final Queue<ModLoader> queueLocal, queueRemote;
     private final String path;
+    private final List<File> descriptors;
 
     public DescriptorFilter(String pathHome,
             Queue<ModLoader> q, Queue<ModLoader> p) {
         path = pathHome;
         queueLocal = q;
         queueRemote = p;
+        descriptors = new ArrayList<>();
     }
 
     @Override
     public boolean accept(File file) {
-        String pathHome;
         String filename;
         int idx;
-        String prefix;
         String suffix;
-        ModLoader loader;
-        Queue<ModLoader> queue;
-        Pattern pRemoteMod;
-        Matcher m;
 
-        pathHome = path;
         if (!file.isFile()) {
             return false;
         }
@@ -72,11 +79,93 @@ public class DescriptorFilter implements FileFilter {
         if (!SUFFIX_MOD.equals(suffix)) {
             return false;
         }
-        prefix = filename.substring(0, idx);
+        descriptors.add(file);
+        return false;
+    }
+
+    private static boolean isRemote(File file) {
+        String filename;
+        String prefix;
+        Matcher m;
+
+        filename = file.getName();
+        prefix = filename.substring(0, filename.lastIndexOf('.'));
         // filter remote mod
-        pRemoteMod = Pattern.compile("(?:ugc_)?\\d+");
-        m = pRemoteMod.matcher(prefix);
-        if (m.find()) {
+        m = REMOTE_MOD.matcher(prefix);
+        return m.find();
+    }
+
+    /**
+     * Load all accepted mods
+     *
+     * @param parallelism maximum number of mods loaded at the same time
+     */
+    public void handleMods(int parallelism) {
+        ExecutorService executor;
+        List<File> files;
+        List<Future<ModLoader>> futures;
+        ModLoader loader;
+        Throwable cause;
+
+        files = new ArrayList<>(descriptors);
+        descriptors.clear();
+        // independent of the order of File.listFiles
+        Collections.sort(files);
+        executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, files.size())));
+        try {
+            futures = new ArrayList<>(files.size());
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<ModLoader>() {
+                    @Override
+                    public ModLoader call() {
+                        return handleMod(file);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    loader = futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    cause = ex.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+                if (loader == null) {
+                    continue;
+                }
+                if (isRemote(files.get(i))) {
+                    queueRemote.add(loader);
+                } else {
+                    queueLocal.add(loader);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Parse the descriptor and load the mod
+     *
+     * @param file
+     * @return the loader, or null if the mod is skipped
+     */
+    private ModLoader handleMod(File file) {
+        String pathHome;
+        ModLoader loader;
+        Queue<ModLoader> queue;
+
+        pathHome = path;
+        if (isRemote(file)) {
             // is remote mod
             queue = queueRemote;
             // workshop mods can be disabled for debugging
@@ -87,28 +176,28 @@ public class DescriptorFilter implements FileFilter {
             queue = queueLocal;
             loader = new LocalModLoader(pathHome, file);
         }
+        if (queue == null) {
+            return null;
+        }
         try {
-            if (queue != null) {
-                try {
-                    loader.handleMod();
-                } catch (ModException ex) {
-                    Debug.err.format("[ERROR] Found at mod \"%s\"%n"
-                            + "\tname=%s%n"
-                            + "\tpath=%s%n"
-                            + "\tsver=%s%n"
-                            + "\t%s%n",
-                            ex.getMessage(),
-                            loader.name,
-                            loader.path,
-                            loader.supportedVersion,
-                            ex.getCause());
-                }
-                queue.add(loader);
+            try {
+                loader.handleMod();
+            } catch (ModException ex) {
+                Debug.err.format("[ERROR] Found at mod \"%s\"%n"
+                        + "\tname=%s%n"
+                        + "\tpath=%s%n"
+                        + "\tsver=%s%n"
+                        + "\t%s%n",
+                        ex.getMessage(),
+                        loader.name,
+                        loader.path,
+                        loader.supportedVersion,
+                        ex.getCause());
             }
         } catch (IOException ex) {
-            Logger.getLogger(DescriptorFilter.class.getName()).log(Level.SEVERE, filename, ex);
+            Logger.getLogger(DescriptorFilter.class.getName()).log(Level.SEVERE, file.getName(), ex);
+            return null;
         }
-
-        return false;
+        return loader;
     }
 }
@@ -45,16 +45,44 @@ class LocalModLoader extends ModLoader {
         handleDirectory(file);
     }
 
-    private void handleDirectory(final File root) throws IOException {
-        File dir, file;
-        DirectoryFilter df;
-        ScriptFilter sf;
-        Queue<File> dirs, files;
+    @Override
+    public File getLocation() {
+        return new File(pathHome, path);
+    }
+
+    @Override
+    public boolean reload(File file) throws IOException {
+        String root;
         String filename;
-        String msg;
+        Set<String> set;
+
+        root = getLocation().getAbsolutePath() + File.separator;
+        if (!file.getAbsolutePath().startsWith(root)) {
+            return false;
+        }
+        filename = ScriptPath.getModFilePath(file);
+        if (filename == null) {
+            return true;
+        }
+        if (!file.exists()) {
+            // a deleted directory takes its files along
+            remove(filename);
+            removeAll(filename + '/');
+            return true;
+        }
+        if (!filename.endsWith(".txt") || !file.isFile()) {
+            return true;
+        }
+        set = getDirectories();
+        if (set.contains(ScriptPath.getPath(file.getParentFile()))) {
+            handleFile(file, filename);
+        }
+        return true;
+    }
+
+    private static Set<String> getDirectories() {
         Stellaris main;
         Set<String> set;
-        boolean doParseFile;
 
         main = Stellaris.getDefault();
         if (main == null) {
@@ -67,6 +95,42 @@ class LocalModLoader extends ModLoader {
         if (set.isEmpty()) {
             throw new IllegalStateException("Script directories not found!");
         }
+        return set;
+    }
+
+    private void handleFile(File file, String filename) throws IOException {
+        String msg;
+
+        try (FileReader reader = new FileReader(file);) {
+            handleReader(filename, reader);
+        } catch (SyntaxException ex) {
+            msg = ex.getMessage();
+            if (msg == null) {
+                msg = "";
+            }
+            Debug.err.format(
+                    "[MOD]\tfile=\"%s\"%n"
+                    + "\tname=\"%s\"%n"
+                    + "\tsupported_version=\"%s\"%n"
+                    + "\tSyntaxException: %s%n",
+                    filename,
+                    name,
+                    supportedVersion,
+                    msg
+            );
+        }
+    }
+
+    private void handleDirectory(final File root) throws IOException {
+        File dir, file;
+        DirectoryFilter df;
+        ScriptFilter sf;
+        Queue<File> dirs, files;
+        String filename;
+        Set<String> set;
+        boolean doParseFile;
+
+        set = getDirectories();
         df = new DirectoryFilter();
         root.listFiles(df);
         sf = new ScriptFilter(df.getDirs());
@@ -92,24 +156,7 @@ class LocalModLoader extends ModLoader {
                 filename = ScriptPath.getModFilePath(file);
                 //System.out.format("Mod: %s%n", filename);
                 if (filename.endsWith(".txt")) {
-                    try (FileReader reader = new FileReader(file);) {
-                        handleReader(filename, reader);
-                    } catch (SyntaxException ex) {
-                        msg = ex.getMessage();
-                        if (msg == null) {
-                            msg = "";
-                        }
-                        Debug.err.format(
-                                "[MOD]\tfile=\"%s\"%n"
-                                + "\tname=\"%s\"%n"
-                                + "\tsupported_version=\"%s\"%n"
-                                + "\tSyntaxException: %s%n",
-                                filename,
-                                name,
-                                supportedVersion,
-                                msg
-                        );
-                    }
+                    handleFile(file, filename);
                 }
             }
         }
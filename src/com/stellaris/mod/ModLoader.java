@@ -16,7 +16,6 @@
  */
 package com.stellaris.mod;
 
-import com.stellaris.ScriptParser;
 import com.stellaris.ScriptLexer;
 import com.stellaris.Stellaris;
 import com.stellaris.Token;
@@ -24,11 +23,16 @@ import com.stellaris.TokenException;
 import com.stellaris.script.*;
 import com.stellaris.test.Debug;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipException;
@@ -36,7 +40,7 @@ import javax.script.Bindings;
 import javax.script.ScriptContext;
 import static javax.script.ScriptContext.ENGINE_SCOPE;
 import javax.script.ScriptEngine;
-import javax.script.SimpleScriptContext;
+import javax.script.SimpleBindings;
 
 /**
  *
@@ -67,9 +71,14 @@ public abstract class ModLoader extends SimpleEngine {
     protected String path;
     protected String name;
     protected String supportedVersion;
+    // top-level keys put by each file, and the file owning each key
+    private final Map<String, Set<String>> fileKeys;
+    private final Map<String, String> keyOwners;
 
     public ModLoader(String home, File file) {
         pathHome = home;
+        fileKeys = new HashMap<>();
+        keyOwners = new HashMap<>();
         try {
             path = handleFile(file);
         } catch (ZipException ex) {
@@ -85,36 +94,133 @@ public abstract class ModLoader extends SimpleEngine {
 
     public abstract void handleMod() throws IOException;
 
+    /**
+     *
+     * @return mod directory or archive
+     */
+    public abstract File getLocation();
+
+    /**
+     * Re-parse a file of this mod after it is created, modified or deleted
+     *
+     * @param file
+     * @return false if the file does not belong to this mod
+     * @throws IOException
+     */
+    public abstract boolean reload(File file) throws IOException;
+
     protected void handleReader(String filename, Reader reader) throws IOException {
-        ScriptContext engineContext;
-        ScriptContext fileContext;
-        Bindings bindings;
-        SyntaxValidator validator;
-        int scope;
-
-        validator = new SyntaxValidator();
-        engineContext = getContext();
-        scope = ENGINE_SCOPE;
-        // create a isolated context for current script file
-        fileContext = new SimpleScriptContext();
-        // routine: set FILENAME
-        //fileContext.setAttribute(ScriptEngine.FILENAME, filename, scope);
-        // parse the file
-        try {
-            ScriptParser.newInstance(reader, filename, fileContext);
-        } catch (RuntimeException ex) {
-            throw new ModException(filename, ex);
+        merge(filename, ValidationSession.get().parse(filename, reader));
+    }
+
+    /**
+     * Parse and validate UTF-8 content, without touching the engine context;
+     * safe to call from several threads
+     *
+     * @param filename
+     * @param bytes
+     * @return validated bindings to be merged
+     */
+    protected Bindings parse(String filename, ByteBuffer bytes) {
+        return ValidationSession.get().parse(filename, bytes);
+    }
+
+    /**
+     * Put all bindings of an accepted file into the engine context,
+     * it will be used later to check compatibility between mods
+     *
+     * @param filename
+     * @param bindings
+     */
+    protected void merge(String filename, Bindings bindings) {
+        replace(filename, getContext().getBindings(ENGINE_SCOPE), bindings);
+    }
+
+    /**
+     * Withdraw the bindings of a deleted file
+     *
+     * @param filename
+     */
+    protected void remove(String filename) {
+        replace(filename, getContext().getBindings(ENGINE_SCOPE),
+                new SimpleBindings());
+    }
+
+    /**
+     * Withdraw the bindings of all files under a path
+     *
+     * @param prefix
+     */
+    protected void removeAll(String prefix) {
+        List<String> filenames;
+
+        synchronized (getContext().getBindings(ENGINE_SCOPE)) {
+            filenames = new ArrayList<>(fileKeys.keySet());
+        }
+        for (String filename : filenames) {
+            if (filename.startsWith(prefix)) {
+                remove(filename);
+            }
+        }
+    }
+
+    /**
+     * Replace the bindings of all files under a path in one step,
+     * withdrawing recorded files which are no longer there
+     *
+     * @param prefix
+     * @param files bindings by filename, merged in iteration order
+     */
+    protected void replaceAll(String prefix, Map<String, Bindings> files) {
+        Bindings target;
+        List<String> filenames;
+
+        target = getContext().getBindings(ENGINE_SCOPE);
+        synchronized (target) {
+            for (Map.Entry<String, Bindings> entry : files.entrySet()) {
+                replace(entry.getKey(), target, entry.getValue());
+            }
+            filenames = new ArrayList<>(fileKeys.keySet());
+            for (String filename : filenames) {
+                if (filename.startsWith(prefix)
+                        && !files.containsKey(filename)) {
+                    replace(filename, target, new SimpleBindings());
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the previous bindings of a file in one step
+     *
+     * @param filename
+     * @param target
+     * @param bindings
+     */
+    private void replace(String filename, Bindings target, Bindings bindings) {
+        Set<String> old;
+
+        synchronized (target) {
+            old = fileKeys.remove(filename);
+            if (old != null) {
+                for (String key : old) {
+                    if (!bindings.containsKey(key)
+                            && filename.equals(keyOwners.get(key))) {
+                        keyOwners.remove(key);
+                        target.remove(key);
+                    }
+                }
+            }
+            if (bindings.isEmpty()) {
+                return;
+            }
+            // bindings of a file are never modified after parsing
+            fileKeys.put(filename, bindings.keySet());
+            for (String key : bindings.keySet()) {
+                keyOwners.put(key, filename);
+            }
+            target.putAll(bindings);
         }
-        // retrieve field-type binding
-        bindings = fileContext.getBindings(scope);
-        // validate field-type binding
-        validator.validate(bindings);
-        // if it is accepted,
-        // put all bindings of the file
-        // into the engine context.
-        // it will be used later to check
-        // compatibility between mods
-        engineContext.getBindings(scope).putAll(bindings);
     }
 
     /**
@@ -189,7 +295,7 @@ public abstract class ModLoader extends SimpleEngine {
             Queue<ModLoader> q,
             Queue<ModLoader> p) {
         File dir;
-        FileFilter filter;
+        DescriptorFilter filter;
 
         if (pathHome == null) {
             pathHome = DEFAULT_STELLARIS_DIRECTORY;
@@ -200,6 +306,8 @@ public abstract class ModLoader extends SimpleEngine {
         }
         filter = new DescriptorFilter(pathHome, q, p);
         dir.listFiles(filter);
+        // mods are independent of each other
+        filter.handleMods(Runtime.getRuntime().availableProcessors());
     }
 
     public static void getModLoaders(Queue<ModLoader> q, Queue<ModLoader> p) {
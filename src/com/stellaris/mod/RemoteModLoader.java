@@ -22,10 +22,25 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.EOFException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.script.Bindings;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 
@@ -36,18 +51,68 @@ import org.apache.commons.compress.archivers.zip.ZipFile;
 class RemoteModLoader extends ModLoader {
 
     private static final String DEFAULT_ENTRY_NAME_DESCRIPTOR = "descriptor.mod";
+    private static final int INPUT_SIZE = 0x10000;
+    // pooled per worker thread, archive entries are inflated concurrently
+    private static final ThreadLocal<Inflater> INFLATER
+            = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            // raw deflate data without zlib header
+            return new Inflater(true);
+        }
+    };
+    private static final ThreadLocal<byte[]> INPUT
+            = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INPUT_SIZE];
+        }
+    };
+    private static final ThreadLocal<byte[]> OUTPUT
+            = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INPUT_SIZE];
+        }
+    };
 
     public RemoteModLoader(String home, File file) {
         super(home, file);
     }
 
     public void handleMod() throws IOException {
+        handleArchive(getLocation());
+    }
+
+    @Override
+    public File getLocation() {
         File file;
 
         file = new File(path);
         if (!file.isFile())
             file = new File(pathHome, path);
-        handleArchive(file);
+        return file;
+    }
+
+    /**
+     * Entries cannot be told apart on the file system,
+     * a modified archive is handled as a whole
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public boolean reload(File file) throws IOException {
+        if (!file.getAbsoluteFile().equals(getLocation().getAbsoluteFile())) {
+            return false;
+        }
+        if (file.isFile()) {
+            handleMod();
+        } else {
+            removeAll(ScriptPath.getModArchivePath(file, ""));
+        }
+        return true;
     }
 
     private static String getParentEntryName(String entryName) {
@@ -59,15 +124,27 @@ class RemoteModLoader extends ModLoader {
         return entryName.substring(0, idx);
     }
 
+    /**
+     * Filter the central directory up front, then inflate and parse
+     * qualifying entries in parallel; once every entry is parsed,
+     * bindings are merged in entry order and those of entries no longer
+     * in the archive are withdrawn, all in one step
+     *
+     * @param file
+     * @throws IOException
+     */
     private void handleArchive(final File file) throws IOException {
-        Enumeration<? extends ZipArchiveEntry> entries;
+        Enumeration<ZipArchiveEntry> entries;
         ZipArchiveEntry entry;
         String entryName;
         String parentEntryName;
-        String filename;
         Stellaris main;
         Set<String> set;
         boolean doParseFile;
+        List<ZipArchiveEntry> list;
+        List<ForkJoinTask<Bindings>> tasks;
+        Map<String, Bindings> files;
+        int i;
 
         main = Stellaris.getDefault();
         if (main == null) {
@@ -80,8 +157,9 @@ class RemoteModLoader extends ModLoader {
         if (set.isEmpty()) {
             throw new IllegalStateException("Script directories not found!");
         }
-        try (ZipFile zf = new ZipFile(file);) {
+        try (final ZipFile zf = new ZipFile(file);) {
             entries = zf.getEntries();
+            list = new ArrayList<>();
             while (entries.hasMoreElements()) {
                 entry = entries.nextElement();
                 entryName = entry.getName();
@@ -91,17 +169,127 @@ class RemoteModLoader extends ModLoader {
                 if (!doParseFile) {
                     continue;
                 }
-                filename = ScriptPath.getModArchivePath(file, entryName);
                 if (DEFAULT_ENTRY_NAME_DESCRIPTOR.equals(entryName)) {
                     continue;
                 }
                 if (entryName.endsWith(".txt")) {
-                    try (InputStream input = zf.getInputStream(entry);
-                            Reader reader = new InputStreamReader(input);) {
-                        handleReader(filename, reader);
+                    list.add(entry);
+                }
+            }
+            tasks = new ArrayList<>(list.size());
+            for (final ZipArchiveEntry e : list) {
+                tasks.add(ForkJoinPool.commonPool().submit(
+                        new Callable<Bindings>() {
+                    @Override
+                    public Bindings call() throws IOException {
+                        String filename;
+
+                        filename = ScriptPath.getModArchivePath(file,
+                                e.getName());
+                        return parse(filename, read(zf, e));
+                    }
+                }));
+            }
+            files = new LinkedHashMap<>();
+            try {
+                // a failing entry leaves the previous bindings untouched
+                for (i = 0; i < tasks.size(); i++) {
+                    files.put(ScriptPath.getModArchivePath(file,
+                            list.get(i).getName()), join(tasks.get(i)));
+                }
+            } finally {
+                // the archive is closed on return
+                for (ForkJoinTask<Bindings> task : tasks) {
+                    task.cancel(false);
+                }
+                for (ForkJoinTask<Bindings> task : tasks) {
+                    task.quietlyJoin();
+                }
+            }
+        }
+        replaceAll(ScriptPath.getModArchivePath(file, ""), files);
+    }
+
+    private static Bindings join(ForkJoinTask<Bindings> task)
+            throws IOException {
+        Throwable cause;
+
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Read an entry into a per-thread buffer,
+     * inflating deflated entries with a per-thread inflater
+     *
+     * @param zf
+     * @param entry
+     * @return content, valid until the next read on this thread
+     * @throws IOException
+     */
+    private static ByteBuffer read(ZipFile zf, ZipArchiveEntry entry)
+            throws IOException {
+        byte[] out, in;
+        Inflater inflater;
+        int pos, len;
+        long size;
+
+        size = entry.getSize();
+        if (size < 0 || size > Integer.MAX_VALUE
+                || entry.getMethod() != ZipEntry.STORED
+                && entry.getMethod() != ZipEntry.DEFLATED) {
+            // unknown size or compression method
+            try (InputStream input = zf.getInputStream(entry);) {
+                out = IOUtils.toByteArray(input);
+            }
+            return ByteBuffer.wrap(out);
+        }
+        out = OUTPUT.get();
+        if (out.length < size) {
+            out = new byte[(int) size];
+            OUTPUT.set(out);
+        }
+        pos = 0;
+        try (InputStream input = zf.getRawInputStream(entry);) {
+            if (entry.getMethod() == ZipEntry.STORED) {
+                IOUtils.readFully(input, out, 0, (int) size);
+                return ByteBuffer.wrap(out, 0, (int) size);
+            }
+            in = INPUT.get();
+            inflater = INFLATER.get();
+            inflater.reset();
+            try {
+                while (!inflater.finished() && pos < size) {
+                    if (inflater.needsInput()) {
+                        len = input.read(in);
+                        if (len < 0) {
+                            throw new EOFException(entry.getName());
+                        }
+                        inflater.setInput(in, 0, len);
                     }
+                    pos += inflater.inflate(out, pos, (int) size - pos);
                 }
+            } catch (DataFormatException ex) {
+                throw new ZipException(entry.getName() + ": "
+                        + ex.getMessage());
             }
         }
+        return ByteBuffer.wrap(out, 0, pos);
     }
 }
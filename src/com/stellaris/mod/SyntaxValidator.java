@@ -18,90 +18,137 @@ package com.stellaris.mod;
 
 import com.stellaris.Stellaris;
 import com.stellaris.Type;
+import com.stellaris.TypeSet;
 import com.stellaris.script.ScriptValue;
-import com.stellaris.script.SimpleFactory;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.TreeSet;
+import com.stellaris.script.SyntaxTable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import javax.script.Bindings;
 
 /**
+ * Validates top-level fields against an immutable snapshot
+ * of the game's type information, taken when the validator is created.
  *
  * @author donizyo
  */
 public class SyntaxValidator {
 
+    private static volatile SyntaxValidator instance;
+    private static final Type[] TYPES = Type.values();
+    // type ordinal -> mask of bound types accepting a value of that type
+    private static final int[] ACCEPTED;
+    private final Stellaris main;
+    private final long modCount;
+    // top-level field name -> accepted types
+    private final Map<String, TypeSet> types;
+
+    static {
+        int[] accepted;
+
+        accepted = new int[TYPES.length];
+        for (Type type : TYPES) {
+            accepted[type.ordinal()] = TypeSet.toMask(type);
+        }
+        // lower-ordinal type may be in fact a high-ordinal type
+        //
+        // when a LIST or a COLORLIST is empty,
+        // it's highly propable that it will be
+        // interpreted as a simple STRUCT
+        //
+        // however RANGE type cannot be empty,
+        // which means a STRUCT can never
+        // be an empty RANGE type, so is COLOR type
+        accepted[Type.STRUCT.ordinal()] |= TypeSet.toMask(Type.LIST)
+                | TypeSet.toMask(Type.COLORLIST);
+        // a FLOAT value without decimal part
+        // is highly propable to be interpreted
+        // as an INTEGER,
+        // and RANGE type is in fact INTEGER type
+        accepted[Type.INTEGER.ordinal()] |= TypeSet.toMask(Type.RANGE)
+                | TypeSet.toMask(Type.FLOAT);
+        accepted[Type.RANGE.ordinal()] |= TypeSet.toMask(Type.INTEGER);
+        // a VARIABLE can be anything
+        accepted[Type.VARIABLE.ordinal()] = TypeSet.ALL;
+        ACCEPTED = accepted;
+    }
+
     public SyntaxValidator() {
+        this(Stellaris.getDefault());
     }
 
-    private boolean isValidType(Type type, Set<Type> bindset) {
-        if (type == null) {
-            throw new IllegalArgumentException("Parameter 'type' is null!");
+    private SyntaxValidator(Stellaris main) {
+        SyntaxTable table;
+        Map<String, Object> bindings;
+        Map<String, TypeSet> map;
+        Object obj;
+        int mask;
+
+        // a copy, the watcher may replace bindings meanwhile
+        bindings = main.copyBindings();
+        table = main.getSyntaxTable();
+        this.main = main;
+        // taken first, a concurrent change makes the snapshot outdated
+        this.modCount = table.getModCount();
+        map = new HashMap<>();
+        // files loaded from the syntax cache have no bindings
+        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+            obj = entry.getValue();
+            if (obj != null) {
+                map.put(entry.getKey(),
+                        TypeSet.valueOf(((ScriptValue) obj).getTypeMask()));
+            }
         }
-        if (bindset == null) {
-            throw new IllegalArgumentException("Parameter 'bindset' is null!");
+        // the syntax table takes precedence
+        for (Map.Entry<String, Integer> entry
+                : table.getRootTypeMasks().entrySet()) {
+            mask = entry.getValue();
+            if (mask != 0) {
+                map.put(entry.getKey(), TypeSet.valueOf(mask));
+            }
         }
-        if (bindset.isEmpty()) {
-            throw new IllegalArgumentException("Parameter 'bindset' is empty set!");
+        types = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     *
+     * @return a validator shared by all threads,
+     * recreated after the syntax table changes
+     */
+    public static SyntaxValidator getDefault() {
+        SyntaxValidator res;
+        Stellaris main;
+
+        main = Stellaris.getDefault();
+        res = instance;
+        if (res == null || res.main != main
+                || res.modCount != main.getSyntaxTable().getModCount()) {
+            res = new SyntaxValidator(main);
+            instance = res;
         }
-        if (bindset.contains(type)) {
-            return true;
+        return res;
+    }
+
+    private static boolean isValidType(Type type, int bindmask) {
+        if (type == null) {
+            throw new IllegalArgumentException("Parameter 'type' is null!");
         }
-        // lower-ordinal type may be in fact a high-ordinal type
-        switch (type) {
-            case STRUCT:
-                // when a LIST or a COLORLIST is empty,
-                // it's highly propable that it will be
-                // interpreted as a simple STRUCT
-                //
-                // however RANGE type cannot be empty,
-                // which means a STRUCT can never
-                // be an empty RANGE type, so is COLOR type
-                if (bindset.contains(Type.LIST) || bindset.contains(Type.COLORLIST)) {
-                    return true;
-                }
-                break;
-            case INTEGER:
-                // a FLOAT value without decimal part
-                // is highly propable to be interpreted
-                // as an INTEGER
-                if (bindset.contains(Type.RANGE) || bindset.contains(Type.FLOAT)) {
-                    return true;
-                }
-                // RANGE type is in fact INTEGER type
-                if (bindset.contains(Type.RANGE)) {
-                    return true;
-                }
-                break;
-            case RANGE:
-                // RANGE type is in fact INTEGER type
-                if (bindset.contains(Type.INTEGER)) {
-                    return true;
-                }
-                break;
-            case VARIABLE:
-                // a VARIABLE can be anything
-                return true;
+        if (bindmask == 0) {
+            throw new IllegalArgumentException("Parameter 'bindmask' is empty set!");
         }
-
-        return false;
+        return (ACCEPTED[type.ordinal()] & bindmask) != 0;
     }
 
     public void validate(Bindings script) throws SyntaxException {
-        SimpleFactory factory;
-        Bindings bindings;
-        Set<String> keyset;
-        Set<Type> typeset;
-        Set<Type> bindset;
-        ScriptValue syntax;
+        String key;
+        TypeSet bindset;
         ScriptValue value;
+        int typemask, bindmask, rest, i;
 
-        factory = (SimpleFactory) Stellaris.getDefault();
-        bindings = factory.getBindings();
-        keyset = script.keySet();
-        for (String key : keyset) {
-            syntax = (ScriptValue) bindings.get(key);
-            if (syntax == null) {
+        for (Map.Entry<String, Object> entry : script.entrySet()) {
+            key = entry.getKey();
+            bindset = types.get(key);
+            if (bindset == null) {
                 /*
                 // TODO unknown field name validation should be
                 // replaced by semantic validation
@@ -112,15 +159,16 @@ public class SyntaxValidator {
                 */
                 continue;
             }
-            bindset = syntax.getTypeSet();
-            value = (ScriptValue) script.get(key);
-            typeset = value.getTypeSet();
-            for (Type type : typeset) {
-                if (!isValidType(type, bindset)) {
+            value = (ScriptValue) entry.getValue();
+            typemask = value.getTypeMask();
+            bindmask = bindset.getMask();
+            for (rest = typemask; rest != 0; rest &= rest - 1) {
+                i = Integer.numberOfTrailingZeros(rest);
+                if (!isValidType(TYPES[i], bindmask)) {
                     throw new SyntaxException(
                             String.format("Field \"%s\" has type \"%s\","
                                     + " which is not found in %s",
-                                    key, typeset, bindset
+                                    key, TypeSet.valueOf(typemask), bindset
                             )
                     );
                 }
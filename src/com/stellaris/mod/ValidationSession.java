@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.mod;
+
+import com.stellaris.ScriptParser;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+
+/**
+ * Parses and validates mod files, one session per thread.
+ * <p>
+ * The script context is reused from file to file,
+ * only its bindings are new; they are handed to the mod loader as they are
+ * and become the record of what the file contributes.
+ *
+ * @author donizyo
+ */
+final class ValidationSession {
+
+    private static final ThreadLocal<ValidationSession> SESSION
+            = new ThreadLocal<ValidationSession>() {
+        @Override
+        protected ValidationSession initialValue() {
+            return new ValidationSession();
+        }
+    };
+
+    private final ScriptContext context;
+
+    private ValidationSession() {
+        context = new SimpleScriptContext();
+    }
+
+    static ValidationSession get() {
+        return SESSION.get();
+    }
+
+    private Bindings reset() {
+        Bindings bindings;
+
+        bindings = new SimpleBindings();
+        context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        return bindings;
+    }
+
+    /**
+     *
+     * @param filename
+     * @param reader
+     * @return validated bindings of the file
+     * @throws IOException
+     */
+    Bindings parse(String filename, Reader reader) throws IOException {
+        Bindings bindings;
+
+        bindings = reset();
+        try {
+            ScriptParser.newInstance(reader, filename, context);
+        } catch (RuntimeException ex) {
+            throw new ModException(filename, ex);
+        }
+        SyntaxValidator.getDefault().validate(bindings);
+        return bindings;
+    }
+
+    /**
+     *
+     * @param filename
+     * @param bytes UTF-8 content
+     * @return validated bindings of the file
+     */
+    Bindings parse(String filename, ByteBuffer bytes) {
+        Bindings bindings;
+
+        bindings = reset();
+        try {
+            ScriptParser.newInstance(bytes, filename, context);
+        } catch (RuntimeException ex) {
+            throw new ModException(filename, ex);
+        }
+        SyntaxValidator.getDefault().validate(bindings);
+        return bindings;
+    }
+}
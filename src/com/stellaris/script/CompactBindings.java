@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.script.Bindings;
+
+/**
+ * Bindings kept in sorted parallel arrays while small,
+ * promoted to a TreeMap once they grow beyond THRESHOLD keys.
+ * <p>
+ * Keys iterate in natural order in both forms,
+ * just like SimpleBindings over a TreeMap.
+ * Not thread-safe.
+ *
+ * @author donizyo
+ */
+final class CompactBindings extends AbstractMap<String, Object>
+        implements Bindings {
+
+    static final int THRESHOLD = 16;
+    private static final String[] NO_KEYS = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    // not null after promotion
+    private Map<String, Object> map;
+    private int modCount;
+    private Set<Entry<String, Object>> entrySet;
+
+    CompactBindings() {
+        keys = NO_KEYS;
+        values = NO_VALUES;
+    }
+
+    private static String checkKey(Object key) {
+        String res;
+
+        if (key == null) {
+            throw new NullPointerException("key can not be null");
+        }
+        if (!(key instanceof String)) {
+            throw new ClassCastException("key should be a String");
+        }
+        res = (String) key;
+        if (res.isEmpty()) {
+            throw new IllegalArgumentException("key can not be empty");
+        }
+        return res;
+    }
+
+    private int indexOf(String key) {
+        int lo, hi, mid, cmp;
+
+        lo = 0;
+        hi = size - 1;
+        while (lo <= hi) {
+            mid = lo + hi >>> 1;
+            cmp = keys[mid].compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        Object res;
+        int i, capacity;
+
+        checkKey(name);
+        if (map != null) {
+            return map.put(name, value);
+        }
+        i = indexOf(name);
+        if (i >= 0) {
+            res = values[i];
+            values[i] = value;
+            return res;
+        }
+        if (size == THRESHOLD) {
+            promote();
+            return map.put(name, value);
+        }
+        i = -(i + 1);
+        if (size == keys.length) {
+            capacity = Math.min(Math.max(size * 2, 2), THRESHOLD);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        keys[i] = name;
+        values[i] = value;
+        ++size;
+        ++modCount;
+        return null;
+    }
+
+    private void promote() {
+        Map<String, Object> m;
+        int i;
+
+        m = new TreeMap<>();
+        for (i = 0; i < size; i++) {
+            m.put(keys[i], values[i]);
+        }
+        map = m;
+        keys = NO_KEYS;
+        values = NO_VALUES;
+        size = 0;
+        ++modCount;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        String name;
+
+        name = checkKey(key);
+        if (map != null) {
+            return map.containsKey(name);
+        }
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        String name;
+        int i;
+
+        name = checkKey(key);
+        if (map != null) {
+            return map.get(name);
+        }
+        i = indexOf(name);
+        return i < 0 ? null : values[i];
+    }
+
+    @Override
+    public Object remove(Object key) {
+        String name;
+        Object res;
+        int i;
+
+        name = checkKey(key);
+        if (map != null) {
+            return map.remove(name);
+        }
+        i = indexOf(name);
+        if (i < 0) {
+            return null;
+        }
+        res = values[i];
+        removeAt(i);
+        return res;
+    }
+
+    private void removeAt(int i) {
+        int rest;
+
+        rest = size - i - 1;
+        System.arraycopy(keys, i + 1, keys, i, rest);
+        System.arraycopy(values, i + 1, values, i, rest);
+        --size;
+        keys[size] = null;
+        values[size] = null;
+        ++modCount;
+    }
+
+    @Override
+    public int size() {
+        return map != null ? map.size() : size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        map = null;
+        keys = NO_KEYS;
+        values = NO_VALUES;
+        size = 0;
+        ++modCount;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            if (map != null) {
+                return map.entrySet().iterator();
+            }
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return CompactBindings.this.size();
+        }
+
+        @Override
+        public void clear() {
+            CompactBindings.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private int next;
+        private int last = -1;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Node(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class Node implements Entry<String, Object> {
+
+        private final int index;
+        private final String key;
+
+        private Node(int index) {
+            this.index = index;
+            this.key = keys[index];
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return get(key);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object res;
+
+            if (map != null || index >= size || keys[index] != key) {
+                // the struct has changed underneath
+                return put(key, value);
+            }
+            res = values[index];
+            values[index] = value;
+            return res;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Entry<?, ?> e;
+            Object value;
+
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            e = (Entry<?, ?>) obj;
+            value = getValue();
+            return key.equals(e.getKey())
+                    && (value == null ? e.getValue() == null
+                            : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value;
+
+            value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
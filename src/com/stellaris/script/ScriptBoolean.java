@@ -39,7 +39,13 @@ public abstract class ScriptBoolean extends ScriptValue {
 
     public abstract String toString();
 
-    public static final ScriptBoolean TRUE = new ScriptBoolean() {
+    // TRUE and FALSE are shared by every parser thread
+    public static final ScriptBoolean TRUE = share(new True());
+
+    public static final ScriptBoolean FALSE = share(new False());
+
+    private static final class True extends ScriptBoolean {
+
         @Override
         public boolean get() {
             return true;
@@ -49,9 +55,15 @@ public abstract class ScriptBoolean extends ScriptValue {
         public String toString() {
             return STR_TRUE;
         }
-    };
 
-    public static final ScriptBoolean FALSE = new ScriptBoolean() {
+        @Override
+        protected ScriptValue copy() {
+            return new True();
+        }
+    }
+
+    private static final class False extends ScriptBoolean {
+
         @Override
         public boolean get() {
             return false;
@@ -61,5 +73,10 @@ public abstract class ScriptBoolean extends ScriptValue {
         public String toString() {
             return STR_FALSE;
         }
-    };
+
+        @Override
+        protected ScriptValue copy() {
+            return new False();
+        }
+    }
 }
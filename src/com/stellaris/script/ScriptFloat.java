@@ -25,6 +25,8 @@ import javax.script.ScriptEngine;
  */
 public class ScriptFloat extends ScriptValue {
 
+    private static final ValuePool<Float, ScriptFloat> POOL
+            = new ValuePool<>(1 << 12);
     private float floatValue;
 
     public ScriptFloat(float value) {
@@ -32,7 +34,27 @@ public class ScriptFloat extends ScriptValue {
         floatValue = value;
     }
 
+    /**
+     *
+     * @param value
+     * @return a shared instance, unless the pool is full
+     */
+    public static ScriptFloat valueOf(float value) {
+        Float key;
+        ScriptFloat res;
+
+        key = value;
+        res = POOL.get(key);
+        if (res == null) {
+            res = POOL.intern(key, new ScriptFloat(value));
+        }
+        return res;
+    }
+
     public void set(float newValue) {
+        if (isShared()) {
+            throw new UnsupportedOperationException("Shared value");
+        }
         floatValue = newValue;
     }
 
@@ -48,6 +70,11 @@ public class ScriptFloat extends ScriptValue {
         return Type.FLOAT;
     }
 
+    @Override
+    protected ScriptValue copy() {
+        return new ScriptFloat(floatValue);
+    }
+
     public String toString() {
         return Float.toString(floatValue);
     }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of float values kept in a primitive array.
+ * <p>
+ * Elements are boxed into new ScriptFloat instances on access,
+ * use getFloat(int) to read them without allocation.
+ * The boxes are read-only snapshots, changing one does not
+ * write through to the list, use set(int, ScriptFloat) instead.
+ * Lookups compare float values as Float.equals does, not instances.
+ *
+ * @author donizyo
+ */
+public class ScriptFloatList extends ScriptList<ScriptFloat> {
+
+    private final FloatArray array;
+
+    public ScriptFloatList(float... values) {
+        this(new FloatArray(values));
+    }
+
+    private ScriptFloatList(FloatArray array) {
+        super(array);
+        this.array = array;
+    }
+
+    public float getFloat(int index) {
+        return array.getFloat(index);
+    }
+
+    public float[] toFloatArray() {
+        return Arrays.copyOf(array.data, array.size);
+    }
+
+    private static final class FloatArray extends AbstractList<ScriptFloat>
+            implements RandomAccess {
+
+        private float[] data;
+        private int size;
+
+        private FloatArray(float[] values) {
+            data = values.clone();
+            size = values.length;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+        }
+
+        float getFloat(int index) {
+            checkIndex(index);
+            return data[index];
+        }
+
+        @Override
+        public ScriptFloat get(int index) {
+            return new ScriptFloat(getFloat(index));
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            int i, bits;
+
+            if (o instanceof ScriptFloat) {
+                bits = Float.floatToIntBits(((ScriptFloat) o).get());
+                for (i = 0; i < size; i++) {
+                    if (Float.floatToIntBits(data[i]) == bits) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            int i, bits;
+
+            if (o instanceof ScriptFloat) {
+                bits = Float.floatToIntBits(((ScriptFloat) o).get());
+                for (i = size - 1; i >= 0; i--) {
+                    if (Float.floatToIntBits(data[i]) == bits) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int index;
+
+            index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            remove(index);
+            return true;
+        }
+
+        @Override
+        public ScriptFloat set(int index, ScriptFloat element) {
+            float old;
+
+            checkIndex(index);
+            old = data[index];
+            data[index] = element.get();
+            return new ScriptFloat(old);
+        }
+
+        @Override
+        public void add(int index, ScriptFloat element) {
+            float value;
+
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+            value = element.get();
+            if (size == data.length) {
+                data = Arrays.copyOf(data, Math.max(size * 2, 4));
+            }
+            System.arraycopy(data, index, data, index + 1, size - index);
+            data[index] = value;
+            ++size;
+            ++modCount;
+        }
+
+        @Override
+        public ScriptFloat remove(int index) {
+            float old;
+
+            checkIndex(index);
+            old = data[index];
+            System.arraycopy(data, index + 1, data, index, size - index - 1);
+            --size;
+            ++modCount;
+            return new ScriptFloat(old);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -25,14 +25,43 @@ import javax.script.ScriptEngine;
  */
 public class ScriptInteger extends ScriptValue {
 
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final ScriptInteger[] CACHE;
     private int intValue;
 
+    static {
+        ScriptInteger[] cache;
+        int i;
+
+        cache = new ScriptInteger[CACHE_HIGH - CACHE_LOW + 1];
+        for (i = 0; i < cache.length; i++) {
+            cache[i] = share(new ScriptInteger(i + CACHE_LOW));
+        }
+        CACHE = cache;
+    }
+
     public ScriptInteger(int value) {
         super();
         intValue = value;
     }
 
+    /**
+     *
+     * @param value
+     * @return a shared instance for small values
+     */
+    public static ScriptInteger valueOf(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+        return new ScriptInteger(value);
+    }
+
     public void set(int newValue) {
+        if (isShared()) {
+            throw new UnsupportedOperationException("Shared value");
+        }
         intValue = newValue;
     }
 
@@ -48,6 +77,11 @@ public class ScriptInteger extends ScriptValue {
         return Type.INTEGER;
     }
 
+    @Override
+    protected ScriptValue copy() {
+        return new ScriptInteger(intValue);
+    }
+
     public String toString() {
         return Integer.toString(intValue);
     }
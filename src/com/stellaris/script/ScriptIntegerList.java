@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of int values kept in a primitive array.
+ * <p>
+ * Elements are boxed into ScriptInteger instances on access,
+ * use getInt(int) to read them without allocation.
+ * The boxes are read-only snapshots, changing one does not
+ * write through to the list, use set(int, ScriptInteger) instead.
+ * Lookups compare int values, not instances.
+ *
+ * @author donizyo
+ */
+public class ScriptIntegerList extends ScriptList<ScriptInteger> {
+
+    private final IntArray array;
+
+    public ScriptIntegerList(int... values) {
+        this(new IntArray(values));
+    }
+
+    private ScriptIntegerList(IntArray array) {
+        super(array);
+        this.array = array;
+    }
+
+    public int getInt(int index) {
+        return array.getInt(index);
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(array.data, array.size);
+    }
+
+    private static final class IntArray extends AbstractList<ScriptInteger>
+            implements RandomAccess {
+
+        private int[] data;
+        private int size;
+
+        private IntArray(int[] values) {
+            data = values.clone();
+            size = values.length;
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+        }
+
+        int getInt(int index) {
+            checkIndex(index);
+            return data[index];
+        }
+
+        @Override
+        public ScriptInteger get(int index) {
+            return ScriptInteger.valueOf(getInt(index));
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            int i, value;
+
+            if (o instanceof ScriptInteger) {
+                value = ((ScriptInteger) o).get();
+                for (i = 0; i < size; i++) {
+                    if (data[i] == value) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            int i, value;
+
+            if (o instanceof ScriptInteger) {
+                value = ((ScriptInteger) o).get();
+                for (i = size - 1; i >= 0; i--) {
+                    if (data[i] == value) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int index;
+
+            index = indexOf(o);
+            if (index < 0) {
+                return false;
+            }
+            remove(index);
+            return true;
+        }
+
+        @Override
+        public ScriptInteger set(int index, ScriptInteger element) {
+            int old;
+
+            checkIndex(index);
+            old = data[index];
+            data[index] = element.get();
+            return ScriptInteger.valueOf(old);
+        }
+
+        @Override
+        public void add(int index, ScriptInteger element) {
+            int value;
+
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + size);
+            }
+            value = element.get();
+            if (size == data.length) {
+                data = Arrays.copyOf(data, Math.max(size * 2, 4));
+            }
+            System.arraycopy(data, index, data, index + 1, size - index);
+            data[index] = value;
+            ++size;
+            ++modCount;
+        }
+
+        @Override
+        public ScriptInteger remove(int index) {
+            int old;
+
+            checkIndex(index);
+            old = data[index];
+            System.arraycopy(data, index + 1, data, index, size - index - 1);
+            --size;
+            ++modCount;
+            return ScriptInteger.valueOf(old);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
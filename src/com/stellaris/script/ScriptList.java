@@ -21,7 +21,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import javax.script.ScriptEngine;
@@ -37,7 +36,7 @@ public class ScriptList<T extends ScriptValue>
     private final List<T> list;
 
     public ScriptList() {
-        this(new LinkedList<>());
+        this(new ArrayList<>());
     }
 
     protected ScriptList(List<T> list) {
@@ -52,6 +51,43 @@ public class ScriptList<T extends ScriptValue>
         }
     }
 
+    /**
+     * Create a list holding the values,
+     * in a primitive array if all of them are integers or all are floats
+     *
+     * @param values
+     * @return
+     */
+    public static ScriptList<?> valueOf(List<? extends ScriptValue> values) {
+        int[] ints;
+        float[] floats;
+        int i, size;
+        boolean isInt, isFloat;
+
+        size = values.size();
+        isInt = size > 0;
+        isFloat = size > 0;
+        for (ScriptValue value : values) {
+            isInt &= value.getClass() == ScriptInteger.class;
+            isFloat &= value.getClass() == ScriptFloat.class;
+        }
+        if (isInt) {
+            ints = new int[size];
+            for (i = 0; i < size; i++) {
+                ints[i] = ((ScriptInteger) values.get(i)).get();
+            }
+            return new ScriptIntegerList(ints);
+        }
+        if (isFloat) {
+            floats = new float[size];
+            for (i = 0; i < size; i++) {
+                floats[i] = ((ScriptFloat) values.get(i)).get();
+            }
+            return new ScriptFloatList(floats);
+        }
+        return new ScriptList<>(new ArrayList<ScriptValue>(values));
+    }
+
     protected Type getType() {
         return Type.LIST;
     }
@@ -24,4 +24,10 @@ import com.stellaris.Type;
  */
 public class ScriptNull extends ScriptValue {
 
+    public static final ScriptNull NULL = share(new ScriptNull());
+
+    @Override
+    protected ScriptValue copy() {
+        return new ScriptNull();
+    }
 }
@@ -25,6 +25,8 @@ import javax.script.ScriptEngine;
  */
 public class ScriptReference extends ScriptValue {
 
+    private static final ValuePool<String, ScriptReference> POOL
+            = new ValuePool<>(1 << 16);
     private final String refValue;
 
     public ScriptReference(String value) {
@@ -32,10 +34,30 @@ public class ScriptReference extends ScriptValue {
         refValue = value;
     }
 
+    /**
+     *
+     * @param value
+     * @return a shared instance, unless the pool is full
+     */
+    public static ScriptReference valueOf(String value) {
+        ScriptReference res;
+
+        res = POOL.get(value);
+        if (res == null) {
+            res = POOL.intern(value, new ScriptReference(value));
+        }
+        return res;
+    }
+
     protected Type getType() {
         return Type.VARIABLE;
     }
 
+    @Override
+    protected ScriptValue copy() {
+        return new ScriptReference(refValue);
+    }
+
     public String get() {
         return refValue;
     }
@@ -25,6 +25,8 @@ import javax.script.ScriptEngine;
  */
 public class ScriptString extends ScriptValue {
 
+    private static final ValuePool<String, ScriptString> POOL
+            = new ValuePool<>(1 << 14);
     private String strValue;
 
     public ScriptString(String value) {
@@ -32,7 +34,25 @@ public class ScriptString extends ScriptValue {
         strValue = value;
     }
 
+    /**
+     *
+     * @param value
+     * @return a shared instance, unless the pool is full
+     */
+    public static ScriptString valueOf(String value) {
+        ScriptString res;
+
+        res = POOL.get(value);
+        if (res == null) {
+            res = POOL.intern(value, new ScriptString(value));
+        }
+        return res;
+    }
+
     public void set(String newValue) {
+        if (isShared()) {
+            throw new UnsupportedOperationException("Shared value");
+        }
         strValue = newValue;
     }
 
@@ -40,6 +60,11 @@ public class ScriptString extends ScriptValue {
         return Type.STRING;
     }
 
+    @Override
+    protected ScriptValue copy() {
+        return new ScriptString(strValue);
+    }
+
     public String get() {
         return strValue;
     }
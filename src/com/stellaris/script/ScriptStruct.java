@@ -21,11 +21,9 @@ import java.lang.ref.SoftReference;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 import javax.script.Bindings;
 import javax.script.ScriptEngine;
-import javax.script.SimpleBindings;
 
 /**
  *
@@ -37,7 +35,8 @@ public class ScriptStruct extends ScriptValue implements Bindings {
 
     public ScriptStruct() {
         super();
-        structValue = new SimpleBindings(new TreeMap<>());
+        // most blocks have only a handful of keys
+        structValue = new CompactBindings();
     }
 
     protected Type getType() {
@@ -16,11 +16,12 @@
  */
 package com.stellaris.script;
 
+import com.stellaris.Patterns;
+import com.stellaris.Token;
 import com.stellaris.Type;
-import com.stellaris.TypeComparator;
+import com.stellaris.TypeSet;
 import java.io.StringReader;
 import java.util.Set;
-import java.util.TreeSet;
 
 /**
  *
@@ -28,7 +29,10 @@ import java.util.TreeSet;
  */
 public abstract class ScriptValue {
 
-    protected Set<Type> type;
+    // marks a flyweight, which may be bound to any number of fields
+    private static final int SHARED = 1 << 31;
+    // bit mask of type ordinals, 0 until first requested
+    private int typeMask;
 
     public ScriptValue() {
     }
@@ -42,52 +46,109 @@ public abstract class ScriptValue {
         return null;
     }
 
-    public void updateTypeInfo(ScriptValue oldValue) {
-        Set<Type> set;
-        Type t;
+    /**
+     * Merge type information of the value being replaced.
+     * Shared values are never changed, a copy is returned instead.
+     *
+     * @param oldValue
+     * @return the value to bind
+     */
+    public ScriptValue updateTypeInfo(ScriptValue oldValue) {
+        ScriptValue res;
+        int mask, merged;
 
         if (oldValue == null) {
-            return;
+            return this;
         }
-        getTypeSet();
-        set = oldValue.type;
-        if (set == null || set.isEmpty()) {
-            t = oldValue.getType();
-            if (t != null) {
-                type.add(t);
-            }
-        } else {
-            type.addAll(set);
+        mask = getTypeMask();
+        merged = mask | oldValue.getTypeMask();
+        if (merged == mask) {
+            return this;
         }
+        res = isShared() ? copy() : this;
+        res.typeMask = merged;
+        return res;
     }
 
-    public Set<Type> getTypeSet() {
-        Type t;
-
-        if (type == null) {
-            type = new TreeSet<>(TypeComparator.DEFAULT_COMPARATOR);
-            t = getType();
-            if (t != null) {
-                type.add(t);
-            }
+    /**
+     * Invoked by ScriptValue.updateTypeInfo on shared values
+     *
+     * @return an unshared value equal to this one
+     */
+    protected ScriptValue copy() {
+        throw new UnsupportedOperationException(getClass().getName());
+    }
+
+    /**
+     * Mark a value as shared, before it is published
+     *
+     * @param <T>
+     * @param value
+     * @return
+     */
+    static <T extends ScriptValue> T share(T value) {
+        ScriptValue v;
+
+        v = value;
+        v.typeMask = v.getTypeMask() | SHARED;
+        return value;
+    }
+
+    /**
+     *
+     * @return true if this is a flyweight instance,
+     * which must not be modified
+     */
+    public boolean isShared() {
+        return (typeMask & SHARED) != 0;
+    }
+
+    /**
+     *
+     * @return bit mask of type ordinals, including merged type information
+     */
+    public int getTypeMask() {
+        int mask;
+
+        mask = typeMask;
+        if (mask == 0) {
+            mask = TypeSet.toMask(getType());
+            typeMask = mask;
         }
-        return type;
+        return mask & ~SHARED;
+    }
+
+    /**
+     *
+     * @return an immutable view of the type mask
+     */
+    public Set<Type> getTypeSet() {
+        return TypeSet.valueOf(getTypeMask());
     }
 
     public static ScriptValue parseString(String str) {
-        int iVal;
-        float fVal;
+        if (str == null)
+            throw new NullPointerException();
+        return parseString(str, Patterns.classify(str));
+    }
 
+    /**
+     *
+     * @param str
+     * @param kind token kind given by the lexer
+     * @return
+     */
+    public static ScriptValue parseString(String str, int kind) {
         if (str == null)
             throw new NullPointerException();
         if ("none".equals(str))
-            return new ScriptNull();
+            return ScriptNull.NULL;
         if ("yes".equals(str))
             return ScriptBoolean.TRUE;
         if ("no".equals(str))
             return ScriptBoolean.FALSE;
         if (str.startsWith("\"") && str.endsWith("\""))
-            return new ScriptString(str);
+            return ScriptString.valueOf(str);
         if (str.startsWith("{") && str.endsWith("}")) {
             //try (StringReader reader = new StringReader(str);) {
                 // TODO Range, Struct, List, Color-list
@@ -97,16 +158,14 @@ public abstract class ScriptValue {
         if (str.startsWith("rgb") || str.startsWith("hsv")) {
             throw new UnsupportedOperationException("ScriptColor");
         }
-        try {
-            iVal = Integer.parseInt(str);
-            return new ScriptInteger(iVal);
-        } catch (NumberFormatException ex) {
-        }
-        try {
-            fVal = Float.parseFloat(str);
-            return new ScriptFloat(fVal);
-        } catch (NumberFormatException ex) {
+        switch (kind) {
+            case Token.INTEGER:
+                return ScriptInteger.valueOf(
+                        Patterns.parseInt(str, 0, str.length()));
+            case Token.FLOAT:
+                return ScriptFloat.valueOf(Float.parseFloat(str));
+            default:
+                return ScriptReference.valueOf(str);
         }
-        return new ScriptReference(str);
     }
 }
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import com.stellaris.Field;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Interned field names and field paths.
+ * <p>
+ * Every distinct name gets an int id, every distinct path gets an int id
+ * keyed by its parent path id and its name id packed into a long,
+ * so that the same key appearing in thousands of files
+ * is stored only once and path lookups need no string hashing.
+ * Path ids are dense, they can index arrays directly.
+ * <p>
+ * Lookups are optimistic and lock-free unless they race with an insertion.
+ *
+ * @author donizyo
+ */
+public final class SymbolTable {
+
+    /**
+     * Parent id of top-level fields
+     */
+    public static final int ROOT = -1;
+    /**
+     * Result of lookups of unknown paths, distinct from ROOT
+     */
+    public static final int NOT_FOUND = -2;
+    private static final long EMPTY = -1L;
+    // probe ran out of steps on an inconsistent table
+    private static final int RETRY = -3;
+    private static final int INITIAL_CAPACITY = 0x1000;
+    private static final SymbolTable DEFAULT = new SymbolTable();
+
+    private final ConcurrentMap<String, Integer> nameIds;
+    private final StampedLock lock;
+    private String[] names;
+    private int nameCount;
+    // open addressing, key and path id in adjacent slots
+    private long[] slots;
+    // indexed by path id
+    private int[] parents;
+    private int[] nameOf;
+    private String[] paths;
+    private int pathCount;
+
+    public SymbolTable() {
+        nameIds = new ConcurrentHashMap<>();
+        lock = new StampedLock();
+        names = new String[INITIAL_CAPACITY];
+        slots = new long[INITIAL_CAPACITY * 2];
+        Arrays.fill(slots, EMPTY);
+        parents = new int[INITIAL_CAPACITY];
+        nameOf = new int[INITIAL_CAPACITY];
+        paths = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     *
+     * @return the table shared by all fields
+     */
+    public static SymbolTable getDefault() {
+        return DEFAULT;
+    }
+
+    private static long toKey(int parent, int name) {
+        return (long) parent << 32 | name & 0xffffffffL;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9e3779b97f4a7c15L;
+        return (int) (key ^ key >>> 32);
+    }
+
+    /**
+     *
+     * @param name
+     * @return id of the name
+     */
+    public int intern(String name) {
+        Integer res;
+        long stamp;
+
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        res = nameIds.get(name);
+        if (res != null) {
+            return res;
+        }
+        stamp = lock.writeLock();
+        try {
+            res = nameIds.get(name);
+            if (res == null) {
+                if (nameCount == names.length) {
+                    names = Arrays.copyOf(names, nameCount * 2);
+                }
+                names[nameCount] = name;
+                res = nameCount++;
+                nameIds.put(name, res);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return res;
+    }
+
+    /**
+     * Intern a path
+     *
+     * @param parent parent path id, or ROOT
+     * @param name
+     * @return id of the path
+     */
+    public int path(int parent, String name) {
+        int nid;
+        long key;
+        long stamp;
+        int res;
+
+        nid = intern(name);
+        key = toKey(parent, nid);
+        res = find(key);
+        if (res != NOT_FOUND) {
+            return res;
+        }
+        stamp = lock.writeLock();
+        try {
+            if (parent != ROOT) {
+                checkId(parent);
+            }
+            res = probe(slots, key);
+            if (res == NOT_FOUND) {
+                res = add(key, parent, nid);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return res;
+    }
+
+    private int add(long key, int parent, int nid) {
+        int res;
+        int len;
+
+        res = pathCount;
+        len = parents.length;
+        if (res == len) {
+            parents = Arrays.copyOf(parents, len * 2);
+            nameOf = Arrays.copyOf(nameOf, len * 2);
+            paths = Arrays.copyOf(paths, len * 2);
+        }
+        parents[res] = parent;
+        nameOf[res] = nid;
+        paths[res] = parent == ROOT
+                ? names[nid]
+                : paths[parent] + Field.SEPERATOR + names[nid];
+        ++pathCount;
+        // keep the load factor at most 1/2
+        if (pathCount * 4 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        insert(slots, key, res);
+        return res;
+    }
+
+    private void rehash(int capacity) {
+        long[] old, table;
+        int i;
+
+        old = slots;
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        for (i = 0; i < old.length; i += 2) {
+            if (old[i] != EMPTY) {
+                insert(table, old[i], (int) old[i + 1]);
+            }
+        }
+        slots = table;
+    }
+
+    private static void insert(long[] table, long key, int id) {
+        int mask;
+        int i;
+
+        mask = table.length - 2;
+        i = hash(key) << 1 & mask;
+        while (table[i] != EMPTY) {
+            i = i + 2 & mask;
+        }
+        // id first, readers validate anyway
+        table[i + 1] = id;
+        table[i] = key;
+    }
+
+    /**
+     * An optimistic reader may see a table that is not fully written yet,
+     * the probe is bounded by the number of slots so that it always ends
+     *
+     * @param table
+     * @param key
+     * @return path id, NOT_FOUND, or RETRY if no empty slot was found
+     */
+    private static int probe(long[] table, long key) {
+        int mask;
+        int i, n;
+        long cur;
+
+        mask = table.length - 2;
+        i = hash(key) << 1 & mask;
+        for (n = table.length >> 1; n > 0; n--) {
+            cur = table[i];
+            if (cur == EMPTY) {
+                return NOT_FOUND;
+            }
+            if (cur == key) {
+                return (int) table[i + 1];
+            }
+            i = i + 2 & mask;
+        }
+        return RETRY;
+    }
+
+    private int find(long key) {
+        long[] table;
+        long stamp;
+        int res;
+
+        stamp = lock.tryOptimisticRead();
+        table = slots;
+        res = probe(table, key);
+        if (res == RETRY || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                res = probe(slots, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Look up a path without interning it
+     *
+     * @param parent parent path id, or ROOT
+     * @param name
+     * @return id of the path, or NOT_FOUND
+     */
+    public int find(int parent, String name) {
+        Integer nid;
+
+        nid = nameIds.get(name);
+        if (nid == null) {
+            return NOT_FOUND;
+        }
+        return find(toKey(parent, nid));
+    }
+
+    /**
+     * Look up a full path, e.g. "tech_lasers_1.potential.always"
+     *
+     * @param path
+     * @return id of the path, or NOT_FOUND
+     */
+    public int find(String path) {
+        int res;
+        int from, to;
+
+        res = ROOT;
+        from = 0;
+        do {
+            to = path.indexOf(Field.SEPERATOR, from);
+            res = find(res, to < 0
+                    ? path.substring(from)
+                    : path.substring(from, to));
+            if (res == NOT_FOUND) {
+                return NOT_FOUND;
+            }
+            from = to + 1;
+        } while (to >= 0);
+        return res;
+    }
+
+    /**
+     *
+     * @return number of paths
+     */
+    public int size() {
+        long stamp;
+        int res;
+
+        stamp = lock.tryOptimisticRead();
+        res = pathCount;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                res = pathCount;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param id path id
+     * @return parent path id, or ROOT
+     */
+    public int getParent(int id) {
+        long stamp;
+        int res;
+
+        stamp = lock.readLock();
+        try {
+            checkId(id);
+            res = parents[id];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param id path id
+     * @return the interned last name of the path
+     */
+    public String getName(int id) {
+        return get(id, false);
+    }
+
+    /**
+     *
+     * @param id path id
+     * @return the interned full path
+     */
+    public String getPath(int id) {
+        return get(id, true);
+    }
+
+    private String get(int id, boolean path) {
+        long stamp;
+        String res;
+
+        stamp = lock.tryOptimisticRead();
+        res = read(id, path);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                res = read(id, path);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (res == null) {
+            throw new IllegalArgumentException(Integer.toString(id));
+        }
+        return res;
+    }
+
+    // may see inconsistent arrays, but never fails
+    private String read(int id, boolean path) {
+        String[] array;
+        int[] index;
+        int nid;
+
+        if (id < 0 || id >= pathCount) {
+            return null;
+        }
+        if (path) {
+            array = paths;
+            return id < array.length ? array[id] : null;
+        }
+        index = nameOf;
+        array = names;
+        if (id >= index.length) {
+            return null;
+        }
+        nid = index[id];
+        return nid >= 0 && nid < array.length ? array[nid] : null;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= pathCount) {
+            throw new IllegalArgumentException(Integer.toString(id));
+        }
+    }
+}
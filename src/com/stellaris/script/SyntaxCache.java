@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import com.stellaris.Type;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary on-disk copy of a syntax table,
+ * so that only modified files have to be parsed at startup.
+ * <p>
+ * The cache is keyed by the game version;
+ * every fragment keeps the digest of the file it was parsed from.
+ * Field paths are written once into a table as (parent index, name) pairs,
+ * type sets are written as bit masks of type ordinals,
+ * both map directly onto the symbol table and type fragments.
+ * Struct children need no extra record,
+ * they are the paths one level below the struct.
+ *
+ * @author donizyo
+ */
+public class SyntaxCache {
+
+    private static final int MAGIC = 0x53544331; // "STC1"
+    private static final Type[] TYPES = Type.values();
+    private final File file;
+
+    public SyntaxCache(File file) {
+        if (file == null) {
+            throw new NullPointerException();
+        }
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Merge cached fragments into the table
+     *
+     * @param version game version
+     * @param table
+     * @return false if there is no valid cache for the version
+     */
+    public boolean load(String version, SyntaxTable table) {
+        List<TypeFragment> list;
+
+        if (!file.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));) {
+            list = read(in, version, file.length());
+        } catch (IOException | RuntimeException ex) {
+            // a truncated or corrupt cache is no cache
+            Logger.getLogger(SyntaxCache.class.getName()).log(Level.WARNING,
+                    file.getPath(), ex);
+            return false;
+        }
+        if (list == null) {
+            return false;
+        }
+        // only merge once the whole cache has been read
+        for (TypeFragment fragment : list) {
+            table.merge(fragment);
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param in
+     * @param version
+     * @param length file length, which bounds every count read
+     * @return fragments, or null if the cache is outdated
+     * @throws IOException if the cache is corrupt
+     */
+    private static List<TypeFragment> read(DataInputStream in, String version,
+            long length) throws IOException {
+        SymbolTable symbols;
+        int[] ids;
+        List<TypeFragment> res;
+        int[] paths, masks;
+        String filename, digest;
+        String name;
+        int count, size;
+        int i, j;
+        int parent;
+
+        if (in.readInt() != MAGIC
+                || !in.readUTF().equals(version)
+                || in.readInt() != TYPES.length) {
+            // outdated cache
+            return null;
+        }
+        symbols = SymbolTable.getDefault();
+        // a path takes at least 6 bytes, a fragment entry 8 bytes
+        count = checkCount(in.readInt(), length / 6);
+        ids = new int[count];
+        for (i = 0; i < count; i++) {
+            parent = in.readInt();
+            name = in.readUTF();
+            // parents always precede their children
+            if (parent < -1 || parent >= i) {
+                throw new IOException("Invalid parent index: " + parent);
+            }
+            ids[i] = symbols.path(
+                    parent < 0 ? SymbolTable.ROOT : ids[parent], name);
+        }
+        count = checkCount(in.readInt(), length / 7);
+        res = new ArrayList<>(count);
+        for (i = 0; i < count; i++) {
+            filename = in.readUTF();
+            digest = in.readBoolean() ? in.readUTF() : null;
+            size = checkCount(in.readInt(), length / 8);
+            paths = new int[size];
+            masks = new int[size];
+            for (j = 0; j < size; j++) {
+                paths[j] = ids[checkIndex(in.readInt(), ids.length)];
+                masks[j] = in.readInt();
+                if ((masks[j] & -1 << TYPES.length) != 0) {
+                    throw new IOException("Invalid type mask: " + masks[j]);
+                }
+            }
+            res.add(new TypeFragment(filename, digest, paths, masks));
+        }
+        return res;
+    }
+
+    private static int checkCount(int count, long limit) throws IOException {
+        if (count < 0 || count > limit) {
+            throw new IOException("Invalid count: " + count);
+        }
+        return count;
+    }
+
+    private static int checkIndex(int index, int size) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IOException("Invalid path index: " + index);
+        }
+        return index;
+    }
+
+    /**
+     * Write the table, replacing the previous cache
+     *
+     * @param version game version
+     * @param table
+     * @throws IOException
+     */
+    public void store(String version, SyntaxTable table) throws IOException {
+        File tmp;
+        SymbolTable symbols;
+        Map<Integer, Integer> index;
+        List<TypeFragment> list;
+        String digest;
+        int parent;
+        int i, size;
+
+        symbols = SymbolTable.getDefault();
+        list = new ArrayList<>(table.getFragments());
+        // symbol table ids -> cache indices
+        index = new LinkedHashMap<>();
+        for (TypeFragment fragment : list) {
+            size = fragment.size();
+            for (i = 0; i < size; i++) {
+                indexOf(symbols, index, fragment.getPath(i));
+            }
+        }
+        tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));) {
+            out.writeInt(MAGIC);
+            out.writeUTF(version);
+            out.writeInt(TYPES.length);
+            out.writeInt(index.size());
+            // in insertion order, parents first
+            for (Integer id : index.keySet()) {
+                parent = symbols.getParent(id);
+                out.writeInt(parent == SymbolTable.ROOT
+                        ? -1
+                        : index.get(parent));
+                out.writeUTF(symbols.getName(id));
+            }
+            out.writeInt(list.size());
+            for (TypeFragment fragment : list) {
+                out.writeUTF(fragment.getFilename());
+                digest = fragment.getDigest();
+                out.writeBoolean(digest != null);
+                if (digest != null) {
+                    out.writeUTF(digest);
+                }
+                size = fragment.size();
+                out.writeInt(size);
+                for (i = 0; i < size; i++) {
+                    out.writeInt(index.get(fragment.getPath(i)));
+                    out.writeInt(fragment.getMask(i));
+                }
+            }
+        }
+        // never leave a half-written cache behind
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Index a path after its parent
+     *
+     * @param symbols
+     * @param index
+     * @param id path id
+     * @return
+     */
+    private static int indexOf(SymbolTable symbols,
+            Map<Integer, Integer> index, int id) {
+        Integer res;
+        int parent;
+
+        res = index.get(id);
+        if (res == null) {
+            parent = symbols.getParent(id);
+            if (parent != SymbolTable.ROOT) {
+                indexOf(symbols, index, parent);
+            }
+            res = index.size();
+            index.put(id, res);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import com.stellaris.Field;
+import com.stellaris.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Global field path - type set table, unioned from per-file fragments.
+ * <p>
+ * Every path keeps a counter per type and a counter of the files
+ * it is found in, so that a file's contribution can be withdrawn again; fragments of different files are merged
+ * concurrently without a global lock.
+ * Counters are indexed by path ids of the default symbol table.
+ *
+ * @author donizyo
+ */
+public class SyntaxTable {
+
+    private static final Type[] TYPES = Type.values();
+    // index of the file counter
+    private static final int PRESENCE = TYPES.length;
+
+    private final SymbolTable symbols;
+    private final ConcurrentMap<String, TypeFragment> fragments;
+    private volatile AtomicIntegerArray[] table;
+    private final AtomicLong modCount;
+
+    public SyntaxTable() {
+        symbols = SymbolTable.getDefault();
+        fragments = new ConcurrentHashMap<>();
+        table = new AtomicIntegerArray[0];
+        modCount = new AtomicLong();
+    }
+
+    /**
+     *
+     * @return a number changed by every merge or removal,
+     * for snapshots to tell whether they are outdated
+     */
+    public long getModCount() {
+        return modCount.get();
+    }
+
+    /**
+     * Union a fragment into the table, replacing the previous
+     * contribution of the same file if there is one
+     *
+     * @param fragment
+     */
+    public void merge(final TypeFragment fragment) {
+        if (fragment == null) {
+            throw new NullPointerException();
+        }
+        // updates of the same file are serialised by the map bin,
+        // while different files proceed in parallel
+        fragments.compute(fragment.getFilename(),
+                new BiFunction<String, TypeFragment, TypeFragment>() {
+            @Override
+            public TypeFragment apply(String filename, TypeFragment old) {
+                SyntaxTable.this.apply(fragment, 1);
+                if (old != null) {
+                    SyntaxTable.this.apply(old, -1);
+                }
+                modCount.incrementAndGet();
+                return fragment;
+            }
+        });
+    }
+
+    /**
+     * Withdraw the contribution of a file
+     *
+     * @param filename
+     */
+    public void remove(String filename) {
+        fragments.computeIfPresent(filename,
+                new BiFunction<String, TypeFragment, TypeFragment>() {
+            @Override
+            public TypeFragment apply(String key, TypeFragment old) {
+                SyntaxTable.this.apply(old, -1);
+                modCount.incrementAndGet();
+                return null;
+            }
+        });
+    }
+
+    private void apply(TypeFragment fragment, int delta) {
+        AtomicIntegerArray counter;
+        int mask;
+        int i, j, size;
+
+        size = fragment.size();
+        for (i = 0; i < size; i++) {
+            counter = getCounter(fragment.getPath(i), true);
+            mask = fragment.getMask(i);
+            for (j = 0; mask != 0; j++, mask >>>= 1) {
+                if ((mask & 1) != 0) {
+                    counter.addAndGet(j, delta);
+                }
+            }
+            counter.addAndGet(PRESENCE, delta);
+        }
+    }
+
+    private AtomicIntegerArray getCounter(int id, boolean create) {
+        AtomicIntegerArray[] array;
+        AtomicIntegerArray res;
+
+        if (id < 0) {
+            return null;
+        }
+        array = table;
+        res = id < array.length ? array[id] : null;
+        if (res != null || !create) {
+            return res;
+        }
+        synchronized (this) {
+            array = table;
+            if (id >= array.length) {
+                array = Arrays.copyOf(array,
+                        Math.max(id + 1, array.length * 2));
+            }
+            res = array[id];
+            if (res == null) {
+                res = new AtomicIntegerArray(PRESENCE + 1);
+                array[id] = res;
+            }
+            // publish the new counter
+            table = array;
+        }
+        return res;
+    }
+
+    public TypeFragment getFragment(String filename) {
+        return fragments.get(filename);
+    }
+
+    public Collection<TypeFragment> getFragments() {
+        return Collections.unmodifiableCollection(fragments.values());
+    }
+
+    public Set<String> getFilenames() {
+        return Collections.unmodifiableSet(fragments.keySet());
+    }
+
+    public boolean containsPath(String path) {
+        return containsPath(symbols.find(path));
+    }
+
+    /**
+     *
+     * @param id path id
+     * @return
+     */
+    public boolean containsPath(int id) {
+        AtomicIntegerArray counter;
+
+        counter = getCounter(id, false);
+        return counter != null && counter.get(PRESENCE) > 0;
+    }
+
+    /**
+     *
+     * @param path
+     * @return a snapshot of the type set, or null if path is unknown
+     */
+    public Set<Type> getTypeSet(String path) {
+        return getTypeSet(symbols.find(path));
+    }
+
+    public Set<Type> getTypeSet(Field field) {
+        return getTypeSet(field.getId());
+    }
+
+    /**
+     *
+     * @param id path id
+     * @return a snapshot of the type set, or null if path is unknown
+     */
+    public Set<Type> getTypeSet(int id) {
+        Set<Type> res;
+        int mask;
+
+        mask = getTypeMask(id);
+        if (mask < 0) {
+            return null;
+        }
+        res = EnumSet.noneOf(Type.class);
+        for (Type type : TYPES) {
+            if ((mask & 1 << type.ordinal()) != 0) {
+                res.add(type);
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @param id path id
+     * @return bit mask of type ordinals, or -1 if path is unknown
+     */
+    public int getTypeMask(int id) {
+        AtomicIntegerArray counter;
+        int res;
+        int i;
+
+        counter = getCounter(id, false);
+        if (counter == null || counter.get(PRESENCE) <= 0) {
+            return -1;
+        }
+        res = 0;
+        for (i = 0; i < PRESENCE; i++) {
+            if (counter.get(i) > 0) {
+                res |= 1 << i;
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @return type masks of all known top-level paths
+     */
+    public Map<String, Integer> getRootTypeMasks() {
+        AtomicIntegerArray[] array;
+        Map<String, Integer> res;
+        int mask;
+        int i;
+
+        array = table;
+        res = new HashMap<>();
+        for (i = 0; i < array.length; i++) {
+            if (array[i] == null
+                    || symbols.getParent(i) != SymbolTable.ROOT) {
+                continue;
+            }
+            mask = getTypeMask(i);
+            if (mask >= 0) {
+                res.put(symbols.getPath(i), mask);
+            }
+        }
+        return res;
+    }
+
+    /**
+     *
+     * @return ids of paths ever merged, including withdrawn ones
+     * whose type mask is -1
+     */
+    public int[] getPathIds() {
+        AtomicIntegerArray[] array;
+        int[] res;
+        int i, size;
+
+        array = table;
+        res = new int[array.length];
+        size = 0;
+        for (i = 0; i < array.length; i++) {
+            if (array[i] != null) {
+                res[size++] = i;
+            }
+        }
+        return Arrays.copyOf(res, size);
+    }
+
+    /**
+     *
+     * @return paths ever merged, including withdrawn ones
+     * whose type set is null
+     */
+    public Set<String> getPaths() {
+        AtomicIntegerArray[] array;
+        Set<String> res;
+        int i;
+
+        array = table;
+        res = new HashSet<>(array.length * 4 / 3 + 1);
+        for (i = 0; i < array.length; i++) {
+            if (array[i] != null) {
+                res.add(symbols.getPath(i));
+            }
+        }
+        return res;
+    }
+
+    public void clear() {
+        synchronized (this) {
+            fragments.clear();
+            table = new AtomicIntegerArray[0];
+            modCount.incrementAndGet();
+        }
+    }
+}
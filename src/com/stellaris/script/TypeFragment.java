@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import com.stellaris.Field;
+import com.stellaris.TypeSet;
+import java.util.Arrays;
+
+/**
+ * Immutable type information contributed by a single script file,
+ * stored as path ids of the default symbol table
+ * and bit masks of type ordinals
+ *
+ * @author donizyo
+ */
+public final class TypeFragment {
+
+    private final String filename;
+    private final String digest;
+    private final int[] paths;
+    private final int[] masks;
+
+    TypeFragment(String filename, String digest, int[] paths, int[] masks) {
+        if (paths.length != masks.length) {
+            throw new IllegalArgumentException();
+        }
+        this.filename = filename;
+        this.digest = digest;
+        this.paths = paths;
+        this.masks = masks;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     *
+     * @return digest of the file content parsed, may be null
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     *
+     * @return number of field paths
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     *
+     * @param i
+     * @return path id of the i-th entry
+     */
+    public int getPath(int i) {
+        return paths[i];
+    }
+
+    /**
+     *
+     * @param i
+     * @return type mask of the i-th entry
+     */
+    public int getMask(int i) {
+        return masks[i];
+    }
+
+    public static class Builder {
+
+        private static final int EMPTY = -1;
+        private final String filename;
+        private String digest;
+        // open addressing, path id -> type mask
+        private int[] paths;
+        private int[] masks;
+        private int size;
+
+        public Builder(String filename) {
+            if (filename == null) {
+                throw new NullPointerException();
+            }
+            this.filename = filename;
+            init(64);
+        }
+
+        private void init(int capacity) {
+            paths = new int[capacity];
+            masks = new int[capacity];
+            Arrays.fill(paths, EMPTY);
+        }
+
+        public void setDigest(String digest) {
+            this.digest = digest;
+        }
+
+        public void add(Field field, ScriptValue value) {
+            if (paths == null) {
+                throw new IllegalStateException("Fragment is already built");
+            }
+            add(field.getId(), TypeSet.toMask(value.getType()));
+        }
+
+        void add(int path, int mask) {
+            int[] oldPaths, oldMasks;
+            int i;
+
+            if (size * 2 >= paths.length) {
+                oldPaths = paths;
+                oldMasks = masks;
+                init(oldPaths.length * 2);
+                size = 0;
+                for (i = 0; i < oldPaths.length; i++) {
+                    if (oldPaths[i] != EMPTY) {
+                        add(oldPaths[i], oldMasks[i]);
+                    }
+                }
+            }
+            i = indexOf(path);
+            if (paths[i] == EMPTY) {
+                paths[i] = path;
+                ++size;
+            }
+            masks[i] |= mask;
+        }
+
+        private int indexOf(int path) {
+            int mask;
+            int h, i;
+
+            mask = paths.length - 1;
+            h = path * 0x9e3779b9;
+            i = (h ^ h >>> 16) & mask;
+            while (paths[i] != EMPTY && paths[i] != path) {
+                i = i + 1 & mask;
+            }
+            return i;
+        }
+
+        public TypeFragment build() {
+            int[] resPaths, resMasks;
+            int i, j;
+
+            if (paths == null) {
+                throw new IllegalStateException("Fragment is already built");
+            }
+            resPaths = new int[size];
+            resMasks = new int[size];
+            j = 0;
+            for (i = 0; i < paths.length; i++) {
+                if (paths[i] != EMPTY) {
+                    resPaths[j] = paths[i];
+                    resMasks[j] = masks[i];
+                    ++j;
+                }
+            }
+            paths = null;
+            masks = null;
+            return new TypeFragment(filename, digest, resPaths, resMasks);
+        }
+    }
+}
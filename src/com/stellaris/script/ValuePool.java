@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.script;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded intern pool of shared script values.
+ * Once the pool is full, values are no longer pooled
+ * and are handed out unshared.
+ *
+ * @author donizyo
+ * @param <K>
+ * @param <V>
+ */
+final class ValuePool<K, V extends ScriptValue> {
+
+    private final ConcurrentMap<K, V> map;
+    private final int limit;
+
+    ValuePool(int limit) {
+        this.map = new ConcurrentHashMap<>();
+        this.limit = limit;
+    }
+
+    V get(K key) {
+        return map.get(key);
+    }
+
+    /**
+     *
+     * @param key
+     * @param value a new value
+     * @return the pooled value, or value itself if the pool is full
+     */
+    V intern(K key, V value) {
+        V res;
+
+        if (map.size() >= limit) {
+            return value;
+        }
+        res = map.putIfAbsent(key, ScriptValue.share(value));
+        return res == null ? value : res;
+    }
+}
@@ -36,5 +36,7 @@ public class Debug {
     public static boolean DEBUG_FIELD = false;
     public static boolean DEBUG_LINE = false;
     public static boolean SKIP_LINE = false;
+    public static boolean VALIDATE_LEXER = false;
+    public static boolean VALIDATE_LOCALISATION = false;
 
 }
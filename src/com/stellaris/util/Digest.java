@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 import javax.xml.bind.DatatypeConverter;
 
@@ -33,6 +35,12 @@ import javax.xml.bind.DatatypeConverter;
 public class Digest {
 
     public static final String DEFAULT_ALGORITHM = "MD5";
+    /**
+     * Non-cryptographic checksums, good enough to detect modified files
+     */
+    public static final String CRC32 = "CRC32";
+    public static final String ADLER32 = "Adler32";
+    private static final int BUFFER_SIZE = 0x10000;
     private byte[] result;
 
     public Digest(File file) {
@@ -43,6 +51,24 @@ public class Digest {
         this(file, newMessageDigest(algorithm));
     }
 
+    /**
+     * Digest a file with either a checksum or a message digest algorithm
+     *
+     * @param file
+     * @param algorithm
+     * @return
+     */
+    public static Digest newDigest(File file, String algorithm) {
+        switch (algorithm) {
+            case CRC32:
+                return new Digest(file, new CRC32());
+            case ADLER32:
+                return new Digest(file, new Adler32());
+            default:
+                return new Digest(file, algorithm);
+        }
+    }
+
     private static MessageDigest newMessageDigest(String algorithm) {
         try {
             return MessageDigest.getInstance(algorithm);
@@ -52,9 +78,10 @@ public class Digest {
     }
 
     public Digest(File file, Checksum cs) {
-        int bufsize;
         byte[] buffer;
         int len;
+        long value;
+        int i;
 
         if (file == null) {
             throw new NullPointerException();
@@ -62,8 +89,7 @@ public class Digest {
         if (!file.isFile()) {
             throw new IllegalArgumentException();
         }
-        bufsize = 1024;
-        buffer = new byte[bufsize];
+        buffer = new byte[(int) Math.min(BUFFER_SIZE, file.length() + 1)];
         try (FileInputStream finput = new FileInputStream(file);) {
             while ((len = finput.read(buffer)) > 0) {
                 cs.update(buffer, 0, len);
@@ -71,10 +97,16 @@ public class Digest {
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
+        // big-endian checksum value
+        value = cs.getValue();
+        result = new byte[8];
+        for (i = 7; i >= 0; i--) {
+            result[i] = (byte) value;
+            value >>>= 8;
+        }
     }
 
     public Digest(File file, MessageDigest md) {
-        int bufsize;
         byte[] buffer;
 
         if (file == null) {
@@ -83,8 +115,7 @@ public class Digest {
         if (!file.isFile()) {
             throw new IllegalArgumentException();
         }
-        bufsize = 1024;
-        buffer = new byte[bufsize];
+        buffer = new byte[(int) Math.min(BUFFER_SIZE, file.length() + 1)];
         try (FileInputStream finput = new FileInputStream(file);
                 DigestInputStream dinput = new DigestInputStream(finput, md);) {
             while (dinput.read(buffer) > 0);
@@ -102,6 +133,17 @@ public class Digest {
         this(new File(path));
     }
 
+    /**
+     *
+     * @param result a digest computed elsewhere
+     */
+    public Digest(byte[] result) {
+        if (result == null) {
+            throw new NullPointerException();
+        }
+        this.result = result;
+    }
+
     public byte[] getResult() {
         return result;
     }
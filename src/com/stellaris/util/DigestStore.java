@@ -21,22 +21,40 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Digests of script files, stored as "size,mtime,digest".
+ * A file is only hashed again when its size or modification time changes.
  *
  * @author donizyo
  */
 public class DigestStore {
 
     private static final String PATH_STORE = "stellaris.dig";
+    private static final char SEPARATOR = ',';
     private final Properties prop;
+    private final String algorithm;
 
     public DigestStore() {
+        this(Digest.DEFAULT_ALGORITHM);
+    }
+
+    /**
+     *
+     * @param algorithm e.g. Digest.CRC32 for a fast non-cryptographic hash
+     */
+    public DigestStore(String algorithm) {
         File file;
 
+        if (algorithm == null) {
+            throw new NullPointerException();
+        }
+        this.algorithm = algorithm;
         prop = new Properties();
         file = getFileStore();
         if (!file.isFile()) {
@@ -64,19 +82,109 @@ public class DigestStore {
 
     public boolean matches(File file) {
         String path;
-        Digest digest;
+        String value;
+        BasicFileAttributes attrs;
         String sum, res;
 
         path = ScriptPath.getPath(file);
-        sum = prop.getProperty(path);
-        digest = new Digest(file);
-        res = digest.digest();
-
-        if (res.equals(sum)) {
+        value = prop.getProperty(path);
+        attrs = stat(file);
+        if (lookup(value, attrs) != null) {
+            // unchanged size and modification time
             return true;
         }
-        prop.setProperty(path, res);
-        return false;
+        res = digest(file);
+        prop.setProperty(path, toRecord(attrs, res));
+        // a touched file may still have the same content
+        sum = value == null
+                ? null
+                : value.substring(value.lastIndexOf(SEPARATOR) + 1);
+        return res.equals(sum);
+    }
+
+    /**
+     * Get the digest of a file, hashing it only if it was modified
+     *
+     * @param file
+     * @return the digest
+     */
+    public String update(File file) {
+        String path;
+        BasicFileAttributes attrs;
+        String res;
+
+        path = ScriptPath.getPath(file);
+        attrs = stat(file);
+        res = lookup(prop.getProperty(path), attrs);
+        if (res == null) {
+            res = digest(file);
+            prop.setProperty(path, toRecord(attrs, res));
+        }
+        return res;
+    }
+
+    /**
+     * Forget the digest of a deleted file
+     *
+     * @param path script path of the file
+     */
+    public void remove(String path) {
+        prop.remove(path);
+    }
+
+    private String digest(File file) {
+        Digest digest;
+
+        digest = Digest.newDigest(file, algorithm);
+        return digest.digest();
+    }
+
+    private static BasicFileAttributes stat(File file) {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static String toRecord(BasicFileAttributes attrs, String digest) {
+        StringBuilder sb;
+
+        sb = new StringBuilder();
+        sb.append(attrs.size());
+        sb.append(SEPARATOR);
+        sb.append(attrs.lastModifiedTime().toMillis());
+        sb.append(SEPARATOR);
+        sb.append(digest);
+        return sb.toString();
+    }
+
+    /**
+     *
+     * @param value stored record
+     * @param attrs
+     * @return the stored digest if size and modification time match,
+     * otherwise null
+     */
+    private static String lookup(String value, BasicFileAttributes attrs) {
+        int i, j;
+
+        if (value == null) {
+            return null;
+        }
+        i = value.indexOf(SEPARATOR);
+        j = value.lastIndexOf(SEPARATOR);
+        if (i < 0 || i == j) {
+            // digest-only record of older versions
+            return null;
+        }
+        if (!value.substring(0, i).equals(Long.toString(attrs.size()))
+                || !value.substring(i + 1, j).equals(
+                        Long.toString(attrs.lastModifiedTime().toMillis()))) {
+            return null;
+        }
+        return value.substring(j + 1);
     }
 
     public void store() {
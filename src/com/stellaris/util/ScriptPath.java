@@ -41,15 +41,17 @@ public class ScriptPath {
      * @return 
      */
     public static String getPath(String path) {
-        final String sp = "Stellaris\\";
+        final String sp = "Stellaris/";
         int len;
         int idx;
+        // accept both Windows and POSIX separators
+        path = path.replace('\\', '/');
         idx = path.indexOf(sp);
         if (idx == -1)
             return null;
         len = sp.length();
         idx += len;
-        return path.substring(idx).replace('\\', '/');
+        return path.substring(idx);
     }
     
     public static String getModFilePath(File file) {
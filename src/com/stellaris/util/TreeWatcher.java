@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2016 donizyo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.stellaris.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches directory trees for created, modified and deleted files.
+ * <p>
+ * Events are collected until the trees have been quiet for a short delay,
+ * so that an editor saving a file in several steps,
+ * or a tool rewriting a whole directory, is reported as one batch.
+ * If the platform has no usable WatchService,
+ * e.g. when the inotify watch limit is reached,
+ * the trees are polled by comparing file sizes and modification times.
+ * <p>
+ * The listener is called on the watcher thread.
+ *
+ * @author donizyo
+ */
+public class TreeWatcher implements Closeable {
+
+    public interface Listener {
+
+        /**
+         *
+         * @param files changed files, deleted ones no longer exist
+         */
+        void changed(Set<File> files);
+    }
+
+    private static final long DEFAULT_DELAY = 50;
+    private static final long POLL_INTERVAL = 500;
+
+    private final List<Path> roots;
+    private final Listener listener;
+    private final long delay;
+    private final Map<WatchKey, Path> keys;
+    private final Set<File> pending;
+    private WatchService service;
+    // polling mode only: file -> {size, mtime}
+    private Map<File, long[]> snapshot;
+    private Thread thread;
+    private volatile boolean closed;
+
+    public TreeWatcher(Collection<File> roots, Listener listener) {
+        this(roots, listener, DEFAULT_DELAY, false);
+    }
+
+    /**
+     *
+     * @param roots
+     * @param listener
+     * @param delay quiet period in milliseconds before changes are reported
+     * @param polling do not even try a WatchService
+     */
+    public TreeWatcher(Collection<File> roots, Listener listener,
+            long delay, boolean polling) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        this.roots = new ArrayList<>(roots.size());
+        for (File root : roots) {
+            if (!root.isDirectory()) {
+                throw new IllegalArgumentException(root.getPath());
+            }
+            this.roots.add(root.toPath());
+        }
+        this.listener = listener;
+        this.delay = delay;
+        keys = new HashMap<>();
+        pending = new LinkedHashSet<>();
+        if (!polling) {
+            try {
+                service = FileSystems.getDefault().newWatchService();
+                for (Path root : this.roots) {
+                    register(root, null);
+                }
+            } catch (IOException | UnsupportedOperationException ex) {
+                Logger.getLogger(TreeWatcher.class.getName()).log(Level.WARNING,
+                        "Falling back to polling", ex);
+                closeService();
+                service = null;
+                keys.clear();
+            }
+        }
+        if (service == null) {
+            snapshot = scan();
+        }
+    }
+
+    public boolean isPolling() {
+        return service == null;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Watcher is already started");
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (isPolling()) {
+                        poll();
+                    } else {
+                        watch();
+                    }
+                } catch (InterruptedException | ClosedWatchServiceException ex) {
+                    // closed
+                }
+            }
+        }, TreeWatcher.class.getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeService();
+        synchronized (this) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private void closeService() {
+        WatchService ws;
+
+        ws = service;
+        if (ws == null) {
+            return;
+        }
+        try {
+            ws.close();
+        } catch (IOException ex) {
+            Logger.getLogger(TreeWatcher.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Register a directory tree
+     *
+     * @param dir
+     * @param created receives files of the tree, may be null
+     * @throws IOException
+     */
+    private void register(Path dir, final Set<File> created)
+            throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(service,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attrs) {
+                if (created != null) {
+                    created.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch() throws InterruptedException {
+        WatchKey key;
+        Path dir, child;
+        WatchEvent.Kind<?> kind;
+
+        while (!closed) {
+            key = pending.isEmpty()
+                    ? service.take()
+                    : service.poll(delay, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                // quiet for a while
+                flush();
+                continue;
+            }
+            dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    // events are lost, report everything
+                    pending.addAll(scan().keySet());
+                    continue;
+                }
+                if (dir == null) {
+                    continue;
+                }
+                child = dir.resolve((Path) event.context());
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE
+                        && Files.isDirectory(child)) {
+                    try {
+                        register(child, pending);
+                    } catch (IOException ex) {
+                        Logger.getLogger(TreeWatcher.class.getName()).log(Level.SEVERE,
+                                child.toString(), ex);
+                    }
+                } else {
+                    pending.add(child.toFile());
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    private void poll() throws InterruptedException {
+        Map<File, long[]> current;
+        Set<File> changed;
+        long[] old;
+
+        changed = new LinkedHashSet<>();
+        while (!closed) {
+            Thread.sleep(Math.max(delay, POLL_INTERVAL));
+            current = scan();
+            for (Map.Entry<File, long[]> entry : current.entrySet()) {
+                old = snapshot.get(entry.getKey());
+                if (old == null
+                        || old[0] != entry.getValue()[0]
+                        || old[1] != entry.getValue()[1]) {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (File file : snapshot.keySet()) {
+                if (!current.containsKey(file)) {
+                    changed.add(file);
+                }
+            }
+            snapshot = current;
+            if (changed.isEmpty()) {
+                // quiet for a whole round
+                flush();
+            } else {
+                pending.addAll(changed);
+                changed.clear();
+            }
+        }
+    }
+
+    private void flush() {
+        Set<File> files;
+
+        if (pending.isEmpty()) {
+            return;
+        }
+        files = Collections.unmodifiableSet(new LinkedHashSet<>(pending));
+        pending.clear();
+        try {
+            listener.changed(files);
+        } catch (RuntimeException ex) {
+            // keep watching
+            Logger.getLogger(TreeWatcher.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private Map<File, long[]> scan() {
+        final Map<File, long[]> res;
+
+        res = new HashMap<>();
+        for (Path root : roots) {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file,
+                            BasicFileAttributes attrs) {
+                        res.put(file.toFile(), new long[]{
+                            attrs.size(),
+                            attrs.lastModifiedTime().toMillis()
+                        });
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file,
+                            IOException ex) {
+                        // deleted while walking
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException ex) {
+                Logger.getLogger(TreeWatcher.class.getName()).log(Level.SEVERE,
+                        root.toString(), ex);
+            }
+        }
+        return res;
+    }
+}